@@ -0,0 +1,111 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+package com.epam.dep.esp.common;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a batch of short commands at once, reports the time per batch and the peak number of platform threads,
+ * virtual threads are not counted.
+ * Compare a run on Java 8 or 11 (pooled platform pumpers) with a run on Java 21 (virtual pumpers):
+ * <pre>
+ * ./gradlew jmh -PjmhInclude=ConcurrentOSBenchmark
+ * </pre>
+ * The caller pool is the same in both runs, the difference of peakThreads comes from the stream pumpers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConcurrentOSBenchmark {
+
+    @Param({"1000"})
+    public int commands;
+
+    @Param({"64"})
+    public int callers;
+
+    private OS os;
+    private List<String> command;
+    private ExecOptions options;
+    private ExecutorService pool;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Threads {
+        public long peakThreads;
+    }
+
+    @Setup
+    public void setUp() {
+        os = OS.getOs();
+        command = os == OS.win ? Arrays.asList("cmd", "/c", "echo line") : Arrays.asList("/bin/sh", "-c", "echo line");
+        options = ExecOptions.builder().timeout(60, TimeUnit.SECONDS).build();
+        pool = Executors.newFixedThreadPool(callers);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPeak() {
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public void execBatch(Threads threads) {
+        CompletableFuture<?>[] batch = new CompletableFuture<?>[commands];
+        for (int i = 0; i < commands; i++) {
+            batch[i] = CompletableFuture.runAsync(this::exec, pool);
+        }
+        CompletableFuture.allOf(batch).join();
+        threads.peakThreads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+    }
+
+    private void exec() {
+        try {
+            os.execCommandLine(command, options);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
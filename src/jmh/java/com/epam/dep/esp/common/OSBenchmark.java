@@ -0,0 +1,68 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process spawn and output capture, the command prints the given number of lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OSBenchmark {
+
+    @Param({"1", "10000"})
+    public int lines;
+
+    private OS os;
+    private List<String> command;
+
+    @Setup
+    public void setUp() {
+        os = OS.getOs();
+        if (os == OS.win) {
+            command = Arrays.asList("cmd", "/c", "for /l %i in (1,1," + lines + ") do @echo line %i");
+        } else {
+            command = Arrays.asList("/bin/sh", "-c", "seq 1 " + lines);
+        }
+    }
+
+    @Benchmark
+    public List<String> execCommandLine() {
+        List<String> out = new ArrayList<>(lines);
+        os.execCommandLine(command, out, ".", 60);
+        return out;
+    }
+}
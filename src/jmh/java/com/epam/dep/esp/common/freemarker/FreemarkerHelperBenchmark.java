@@ -0,0 +1,63 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.freemarker;
+
+import freemarker.template.TemplateException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FreemarkerHelperBenchmark {
+    private FreemarkerHelper freemarker;
+    private Map<String, Object> variables;
+
+    @Setup
+    public void setUp() {
+        freemarker = new FreemarkerHelper(getClass().getClassLoader(), "templates");
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add("value " + i);
+        }
+        variables = new HashMap<>();
+        variables.put("title", "Benchmark");
+        variables.put("items", items);
+    }
+
+    @Benchmark
+    public String processTemplate() throws IOException, TemplateException {
+        return freemarker.processTemplate("benchmark.ftl", variables);
+    }
+}
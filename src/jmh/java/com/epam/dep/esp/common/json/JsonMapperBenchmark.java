@@ -0,0 +1,104 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonMapperBenchmark {
+
+    @Param({"small", "large"})
+    public String size;
+
+    @Param({"false", "true"})
+    public boolean pretty;
+
+    @Param({"false", "true"})
+    public boolean filtered;
+
+    private Object bean;
+    private AbstractJsonMapper mapper;
+    private final OutputStream sink = new OutputStream() {
+        @Override
+        public void write(int b) {
+            // discard
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // discard
+        }
+    };
+
+    public static class Item {
+        public String name = "item";
+        public String password = "secret";
+        public long id;
+        public double price = 12.5;
+        public List<String> tags = Arrays.asList("one", "two", "three");
+
+        Item(long id) {
+            this.id = id;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        if ("small".equals(size)) {
+            bean = new Item(1);
+        } else {
+            List<Item> items = new ArrayList<>();
+            for (int i = 0; i < 10000; i++) {
+                items.add(new Item(i));
+            }
+            bean = items;
+        }
+        mapper = filtered ? FilteredJsonMapper.getInstance() : JsonMapper.getInstance();
+    }
+
+    @Benchmark
+    public String map() {
+        return mapper.map(pretty, bean);
+    }
+
+    @Benchmark
+    public OutputStream mapTo() throws IOException {
+        mapper.mapTo(pretty, false, bean, sink);
+        return sink;
+    }
+}
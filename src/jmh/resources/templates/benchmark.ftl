@@ -0,0 +1,6 @@
+<h1>${title}</h1>
+<ul>
+<#list items as item>
+    <li>${item?index}: ${item?upper_case}</li>
+</#list>
+</ul>
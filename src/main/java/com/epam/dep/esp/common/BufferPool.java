@@ -0,0 +1,135 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of fixed size byte and char buffers shared by JSON mapping, HTTP response reading
+ * and process output capture. The pool is lock-free and keeps no thread-local state,
+ * so it can be used from any number of platform or virtual threads.
+ * A buffer has to be released exactly once and must not be used after it is released.
+ */
+public class BufferPool {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final BufferPool pool = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_CAPACITY);
+
+    private final int bufferSize;
+    private final int capacity;
+    private final Queue<byte[]> bytes = new ConcurrentLinkedQueue<>();
+    private final Queue<char[]> chars = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBytes = new AtomicInteger();
+    private final AtomicInteger pooledChars = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param bufferSize size of every buffer
+     * @param capacity   max number of idle buffers of each kind kept by the pool
+     */
+    public BufferPool(int bufferSize, int capacity) {
+        if (bufferSize < 1 || capacity < 0) {
+            throw new IllegalArgumentException("Invalid pool size: " + bufferSize + "x" + capacity);
+        }
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+    }
+
+    public static BufferPool getInstance() {
+        return pool;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public byte[] acquireBytes() {
+        byte[] buffer = bytes.poll();
+        if (buffer == null) {
+            misses.increment();
+            return new byte[bufferSize];
+        }
+        pooledBytes.decrementAndGet();
+        hits.increment();
+        return buffer;
+    }
+
+    public char[] acquireChars() {
+        char[] buffer = chars.poll();
+        if (buffer == null) {
+            misses.increment();
+            return new char[bufferSize];
+        }
+        pooledChars.decrementAndGet();
+        hits.increment();
+        return buffer;
+    }
+
+    /**
+     * @param buffer buffer to return, buffers of a foreign size or above the capacity are left to GC
+     */
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize && reserve(pooledBytes)) {
+            bytes.offer(buffer);
+        }
+    }
+
+    /**
+     * @param buffer buffer to return, buffers of a foreign size or above the capacity are left to GC
+     */
+    public void release(char[] buffer) {
+        if (buffer != null && buffer.length == bufferSize && reserve(pooledChars)) {
+            chars.offer(buffer);
+        }
+    }
+
+    /**
+     * @return number of acquisitions served from the pool
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of acquisitions which allocated a new buffer
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of idle buffers of both kinds kept by the pool
+     */
+    public int getPooled() {
+        return pooledBytes.get() + pooledChars.get();
+    }
+
+    private boolean reserve(AtomicInteger counter) {
+        int current;
+        do {
+            current = counter.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!counter.compareAndSet(current, current + 1));
+        return true;
+    }
+}
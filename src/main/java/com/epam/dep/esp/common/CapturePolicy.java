@@ -0,0 +1,151 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+/**
+ * Defines which output of an execution is kept in {@link ProcessResult}. A buffer keeps the first lines (head)
+ * and a ring of the last lines (tail), lines in between are dropped and counted, so memory stays bounded
+ * for long-running chatty commands. Output and error streams are buffered separately unless merged.
+ * <pre>
+ * CapturePolicy policy = CapturePolicy.builder().head(20).tail(200).maxChars(64 * 1024).merged(true).build();
+ * </pre>
+ */
+public class CapturePolicy {
+    private static final CapturePolicy ALL = builder().build();
+
+    private final int headLines;
+    private final int tailLines;
+    private final long maxChars;
+    private final boolean merged;
+    private final boolean timestamps;
+
+    private CapturePolicy(Builder builder) {
+        this.headLines = builder.headLines;
+        this.tailLines = builder.tailLines;
+        this.maxChars = builder.maxChars;
+        this.merged = builder.merged;
+        this.timestamps = builder.timestamps;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return policy keeping all output
+     */
+    public static CapturePolicy all() {
+        return ALL;
+    }
+
+    /**
+     * @param lines max number of the last lines kept per stream
+     * @param chars max number of characters of the last lines kept per stream
+     * @return policy keeping the tail of each stream
+     */
+    public static CapturePolicy tail(int lines, long chars) {
+        return builder().tail(lines).maxChars(chars).build();
+    }
+
+    public int getHeadLines() {
+        return headLines;
+    }
+
+    public int getTailLines() {
+        return tailLines;
+    }
+
+    /**
+     * @return max number of characters kept by the head and by the tail of a buffer each
+     */
+    public long getMaxChars() {
+        return maxChars;
+    }
+
+    /**
+     * @return true if both streams share one buffer in the order the lines were read
+     */
+    public boolean isMerged() {
+        return merged;
+    }
+
+    public boolean isTimestamps() {
+        return timestamps;
+    }
+
+    public static class Builder {
+        private int headLines;
+        private int tailLines = Integer.MAX_VALUE;
+        private long maxChars = Long.MAX_VALUE;
+        private boolean merged;
+        private boolean timestamps;
+
+        private Builder() {
+        }
+
+        /**
+         * @param headLines number of the first lines kept, none by default
+         * @return this builder
+         */
+        public Builder head(int headLines) {
+            this.headLines = headLines;
+            return this;
+        }
+
+        /**
+         * @param tailLines number of the last lines kept, unlimited by default
+         * @return this builder
+         */
+        public Builder tail(int tailLines) {
+            this.tailLines = tailLines;
+            return this;
+        }
+
+        /**
+         * @param maxChars max number of characters kept by the head and by the tail each
+         * @return this builder
+         */
+        public Builder maxChars(long maxChars) {
+            this.maxChars = maxChars;
+            return this;
+        }
+
+        /**
+         * @param merged keep both streams in one buffer in the order the lines were read
+         * @return this builder
+         */
+        public Builder merged(boolean merged) {
+            this.merged = merged;
+            return this;
+        }
+
+        /**
+         * @param timestamps record the time each line was read
+         * @return this builder
+         */
+        public Builder timestamps(boolean timestamps) {
+            this.timestamps = timestamps;
+            return this;
+        }
+
+        public CapturePolicy build() {
+            if (headLines < 0 || tailLines < 0 || maxChars < 0) {
+                throw new IllegalArgumentException("Capture limits must not be negative");
+            }
+            return new CapturePolicy(this);
+        }
+    }
+}
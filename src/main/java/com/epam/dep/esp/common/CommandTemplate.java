@@ -0,0 +1,158 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable command prepared once and executed many times with different trailing arguments.
+ * The working folder and the environment are resolved when the template is built, an execution only
+ * applies them to a new {@link ProcessBuilder} and doesn't merge the variables with the parent environment again.
+ * <pre>
+ * CommandTemplate revParse = CommandTemplate.builder("git", "rev-parse").options(options).build();
+ * ProcessResult head = revParse.exec("HEAD");
+ * </pre>
+ */
+public class CommandTemplate {
+    private final OS os;
+    private final List<String> command;
+    private final ExecOptions options;
+    private final File directory;
+    private final Map<String, String> environment;
+
+    private CommandTemplate(Builder builder) {
+        this.os = builder.os;
+        this.command = Collections.unmodifiableList(new ArrayList<>(builder.command));
+        this.options = builder.options;
+        this.directory = options.getHomeFolder() == null ? null : new File(options.getHomeFolder());
+        this.environment = resolveEnvironment(options.getEnvVars());
+    }
+
+    /**
+     * @param command executable and the leading arguments
+     * @return builder of a template
+     */
+    public static Builder builder(String... command) {
+        return new Builder(Arrays.asList(command));
+    }
+
+    public static Builder builder(List<String> command) {
+        return new Builder(command);
+    }
+
+    public List<String> getCommand() {
+        return command;
+    }
+
+    public ExecOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @param arguments arguments appended to the command of the template
+     * @return exit code, null on timeout, and the retained output
+     * @throws IOException if the process can't be started
+     * @see OS#execCommandLine(List, ExecOptions)
+     */
+    public ProcessResult exec(String... arguments) throws IOException {
+        return exec(Arrays.asList(arguments));
+    }
+
+    public ProcessResult exec(List<String> arguments) throws IOException {
+        return os.execCommandLine(command(arguments), options, this::processBuilder);
+    }
+
+    /**
+     * @param arguments arguments appended to the command of the template
+     * @return execution of the command
+     * @see OS#execAsync(List, ExecOptions)
+     */
+    public ProcessExecution execAsync(String... arguments) {
+        return execAsync(Arrays.asList(arguments));
+    }
+
+    public ProcessExecution execAsync(List<String> arguments) {
+        return os.execAsync(command(arguments), options, this::processBuilder);
+    }
+
+    private List<String> command(List<String> arguments) {
+        List<String> line = new ArrayList<>(command.size() + arguments.size());
+        line.addAll(command);
+        line.addAll(arguments);
+        return line;
+    }
+
+    private ProcessBuilder processBuilder(List<String> line) {
+        ProcessBuilder builder = new ProcessBuilder(line);
+        if (environment != null) {
+            Map<String, String> target = builder.environment();
+            target.clear();
+            target.putAll(environment);
+        }
+        return builder.directory(directory);
+    }
+
+    private static Map<String, String> resolveEnvironment(Map<String, String> envVars) {
+        if (envVars == null || envVars.isEmpty()) {
+            // the builder passes the parent environment through without copying it
+            return null;
+        }
+        Map<String, String> environment = new ProcessBuilder().environment();
+        environment.putAll(envVars);
+        return Collections.unmodifiableMap(new HashMap<>(environment));
+    }
+
+    public static class Builder {
+        private final List<String> command;
+        private ExecOptions options = ExecOptions.defaults();
+        private OS os = OS.getOs();
+
+        private Builder(List<String> command) {
+            this.command = command;
+        }
+
+        /**
+         * @param options options of every execution, the working folder and environment are resolved once
+         * @return this builder
+         */
+        public Builder options(ExecOptions options) {
+            this.options = options;
+            return this;
+        }
+
+        public Builder os(OS os) {
+            this.os = os;
+            return this;
+        }
+
+        public CommandTemplate build() {
+            if (command == null || command.isEmpty()) {
+                throw new IllegalArgumentException("Command is required");
+            }
+            if (options == null || os == null) {
+                throw new IllegalArgumentException("Options and OS are required");
+            }
+            return new CommandTemplate(this);
+        }
+    }
+}
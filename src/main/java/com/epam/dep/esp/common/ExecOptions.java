@@ -0,0 +1,273 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Immutable options of a command execution.
+ * <pre>
+ * ExecOptions options = ExecOptions.builder().homeFolder(".").timeout(10, TimeUnit.MINUTES).build();
+ * </pre>
+ */
+public class ExecOptions {
+    private static final ExecOptions DEFAULTS = builder().build();
+
+    private final String homeFolder;
+    private final Map<String, String> envVars;
+    private final long timeoutNanos;
+    private final Executor executor;
+    private final Consumer<String> stdoutConsumer;
+    private final Consumer<String> stderrConsumer;
+    private final CapturePolicy capture;
+    private final int priority;
+    private final long gracePeriodNanos;
+    private final long drainTimeoutNanos;
+
+    private ExecOptions(Builder builder) {
+        this.homeFolder = builder.homeFolder;
+        this.envVars = builder.envVars == null ? null : Collections.unmodifiableMap(new HashMap<>(builder.envVars));
+        this.timeoutNanos = builder.timeoutNanos;
+        this.executor = builder.executor;
+        this.stdoutConsumer = builder.stdoutConsumer;
+        this.stderrConsumer = builder.stderrConsumer;
+        this.capture = builder.capture;
+        this.priority = builder.priority;
+        this.gracePeriodNanos = builder.gracePeriodNanos;
+        this.drainTimeoutNanos = builder.drainTimeoutNanos;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return options without timeout running in the current folder
+     */
+    public static ExecOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @return working folder or null for the current one
+     */
+    public String getHomeFolder() {
+        return homeFolder;
+    }
+
+    /**
+     * @return additional environment variables or null
+     */
+    public Map<String, String> getEnvVars() {
+        return envVars;
+    }
+
+    /**
+     * @return timeout in nanoseconds, {@link Long#MAX_VALUE} if the process may run forever
+     */
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    /**
+     * @return executor completing asynchronous results, {@link ForkJoinPool#commonPool()} by default
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return consumer of output lines or null
+     */
+    public Consumer<String> getStdoutConsumer() {
+        return stdoutConsumer;
+    }
+
+    /**
+     * @return consumer of error lines or null
+     */
+    public Consumer<String> getStderrConsumer() {
+        return stderrConsumer;
+    }
+
+    /**
+     * @return policy of the output kept in the result, {@link CapturePolicy#all()} by default
+     */
+    public CapturePolicy getCapture() {
+        return capture;
+    }
+
+    /**
+     * @return priority in the queue of the {@link ProcessScheduler}, 0 by default
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return time a terminated process tree is given to stop before it is killed forcibly
+     */
+    public long getGracePeriodNanos() {
+        return gracePeriodNanos;
+    }
+
+    /**
+     * @return max time to wait for the rest of the output after the process finished
+     */
+    public long getDrainTimeoutNanos() {
+        return drainTimeoutNanos;
+    }
+
+    public static class Builder {
+        private String homeFolder;
+        private Map<String, String> envVars;
+        private long timeoutNanos = Long.MAX_VALUE;
+        private Executor executor = ForkJoinPool.commonPool();
+        private Consumer<String> stdoutConsumer;
+        private Consumer<String> stderrConsumer;
+        private CapturePolicy capture = CapturePolicy.all();
+        private int priority;
+        private long gracePeriodNanos = TimeUnit.SECONDS.toNanos(5);
+        private long drainTimeoutNanos = TimeUnit.SECONDS.toNanos(10);
+
+        private Builder() {
+        }
+
+        public Builder homeFolder(String homeFolder) {
+            this.homeFolder = homeFolder;
+            return this;
+        }
+
+        /**
+         * @param envVars variables added to the environment inherited from this process
+         * @return this builder
+         */
+        public Builder envVars(Map<String, String> envVars) {
+            this.envVars = envVars;
+            return this;
+        }
+
+        public Builder timeout(long timeout, TimeUnit unit) {
+            this.timeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * @param executor executor completing asynchronous results, dependent stages run on it as well
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Streams output lines as soon as they are read. Synchronous executions call the consumer on a pumper thread
+         * and stop reading while it blocks, so a slow consumer throttles the process. Asynchronous executions call it
+         * on the {@link #executor(Executor) executor}, one line at a time and in order; the process output is not read
+         * while its consumers are far behind, so a slow consumer throttles only its own process there as well.
+         * An exception of the consumer fails the execution: a synchronous one keeps reading the output without passing
+         * it to the consumer and rethrows the exception once the process finished, an asynchronous one terminates
+         * the process and completes exceptionally.
+         *
+         * @param stdoutConsumer consumer of output lines
+         * @return this builder
+         */
+        public Builder stdout(Consumer<String> stdoutConsumer) {
+            this.stdoutConsumer = stdoutConsumer;
+            return this;
+        }
+
+        /**
+         * @param stderrConsumer consumer of error lines
+         * @return this builder
+         * @see #stdout(Consumer)
+         */
+        public Builder stderr(Consumer<String> stderrConsumer) {
+            this.stderrConsumer = stderrConsumer;
+            return this;
+        }
+
+        /**
+         * Bounds the output kept in the result to the last lines of each stream, all lines are kept by default.
+         *
+         * @param maxLines max number of lines per stream, 0 to keep none
+         * @param maxChars max number of characters per stream
+         * @return this builder
+         * @see CapturePolicy#tail(int, long)
+         */
+        public Builder tail(int maxLines, long maxChars) {
+            return capture(CapturePolicy.tail(maxLines, maxChars));
+        }
+
+        public Builder capture(CapturePolicy capture) {
+            this.capture = capture;
+            return this;
+        }
+
+        /**
+         * @param priority priority in the queue of the {@link ProcessScheduler}, higher priorities start first
+         * @return this builder
+         */
+        public Builder priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * @param gracePeriod time a terminated process and its descendants are given to stop before they are
+         *                    killed forcibly, 5 seconds by default, 0 to kill at once
+         * @param unit        unit of the grace period
+         * @return this builder
+         */
+        public Builder gracePeriod(long gracePeriod, TimeUnit unit) {
+            this.gracePeriodNanos = unit.toNanos(gracePeriod);
+            return this;
+        }
+
+        /**
+         * @param drainTimeout max time to wait for the output readers after the process finished, 10 seconds by default
+         * @param unit         unit of the drain timeout
+         * @return this builder
+         */
+        public Builder drainTimeout(long drainTimeout, TimeUnit unit) {
+            this.drainTimeoutNanos = unit.toNanos(drainTimeout);
+            return this;
+        }
+
+        public ExecOptions build() {
+            if (timeoutNanos <= 0) {
+                throw new IllegalArgumentException("Timeout must be positive");
+            }
+            if (executor == null) {
+                throw new IllegalArgumentException("Executor is required");
+            }
+            if (gracePeriodNanos < 0 || drainTimeoutNanos < 0) {
+                throw new IllegalArgumentException("Grace period and drain timeout must not be negative");
+            }
+            if (capture == null) {
+                throw new IllegalArgumentException("Capture policy is required");
+            }
+            return new ExecOptions(this);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.function.Consumer;
+
+/**
+ * Splits a byte stream into lines like {@link java.io.BufferedReader#readLine()}, decoding in pooled buffers.
+ * Input is pushed with {@link #read(InputStream, int, Consumer)}, so the same decoder serves blocking reads
+ * and non-blocking reads of already available bytes. Not thread-safe.
+ */
+class LineDecoder {
+    private final BufferPool pool;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private StringBuilder line;
+    private boolean skipLineFeed;
+    private boolean finished;
+    private boolean released;
+
+    LineDecoder(Charset charset, BufferPool pool) {
+        this.pool = pool;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.wrap(pool.acquireBytes());
+        this.chars = CharBuffer.wrap(pool.acquireChars());
+        bytes.flip();
+    }
+
+    /**
+     * Reads once from the stream and passes every completed line to the consumer.
+     * At the end of the stream the last unterminated line is passed as well.
+     *
+     * @param in    source stream
+     * @param limit max number of bytes to read, the call does not block if the bytes are available
+     * @param lines line consumer
+     * @return number of bytes read or -1 at the end of the stream
+     * @throws IOException if the stream can't be read
+     */
+    int read(InputStream in, int limit, Consumer<String> lines) throws IOException {
+        bytes.compact();
+        int count = in.read(bytes.array(), bytes.position(), Math.min(limit, bytes.remaining()));
+        if (count > 0) {
+            bytes.position(bytes.position() + count);
+        }
+        bytes.flip();
+        if (count < 0) {
+            finish(lines);
+        } else {
+            decode(false, lines);
+        }
+        return count;
+    }
+
+    /**
+     * Decodes the rest of the input and passes the last unterminated line to the consumer.
+     *
+     * @param lines line consumer
+     */
+    void finish(Consumer<String> lines) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        decode(true, lines);
+        decoder.flush(chars);
+        split(lines);
+        if (line != null) {
+            lines.accept(line.toString());
+            line = null;
+        }
+    }
+
+    /**
+     * Returns the buffers to the pool, the decoder can't be used afterwards.
+     */
+    void release() {
+        if (!released) {
+            released = true;
+            pool.release(bytes.array());
+            pool.release(chars.array());
+        }
+    }
+
+    private void decode(boolean endOfInput, Consumer<String> lines) {
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            split(lines);
+        } while (result.isOverflow());
+    }
+
+    private void split(Consumer<String> lines) {
+        chars.flip();
+        char[] array = chars.array();
+        int start = chars.position();
+        int limit = chars.limit();
+        if (skipLineFeed && start < limit) {
+            skipLineFeed = false;
+            if (array[start] == '\n') {
+                start++;
+            }
+        }
+        for (int i = start; i < limit; i++) {
+            char c = array[i];
+            if (c == '\n' || c == '\r') {
+                if (line == null) {
+                    lines.accept(new String(array, start, i - start));
+                } else {
+                    lines.accept(line.append(array, start, i - start).toString());
+                    line = null;
+                }
+                if (c == '\r') {
+                    if (i + 1 < limit) {
+                        if (array[i + 1] == '\n') {
+                            i++;
+                        }
+                    } else {
+                        skipLineFeed = true;
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        if (start < limit) {
+            if (line == null) {
+                line = new StringBuilder(limit - start + 80);
+            }
+            line.append(array, start, limit - start);
+        }
+        chars.clear();
+    }
+}
@@ -15,13 +15,27 @@
 
 package com.epam.dep.esp.common;
 
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 @SuppressWarnings("squid:S00115")
@@ -38,11 +52,20 @@ public enum OS {
     public static final String version = System.getProperty("os.version");
     public static final String patch = System.getProperty("sun.os.patch.level");
 
+    private static final OS current = detect();
+
     OS() {
 
     }
 
+    /**
+     * @return operating system of this JVM, resolved once
+     */
     public static OS getOs() {
+        return current;
+    }
+
+    private static OS detect() {
         LOGGER.debug(osName);
         if (osName.startsWith("windows")) return win;
         else if (osName.startsWith("linux")) return linux;
@@ -55,6 +78,14 @@ public enum OS {
         return execCommandLine(command, out, homeFolder, timeout, null);
     }
 
+    /**
+     * @param command    command line
+     * @param out        receives the error lines followed by the output lines
+     * @param homeFolder working folder or null
+     * @param timeout    timeout in seconds, the process tree is terminated when it expires
+     * @param envVars    additional environment variables or null
+     * @return exit code or null if the process did not exit in time or could not be started
+     */
     public Integer execCommandLine(List<String> command, List<String> out, String homeFolder, int timeout, Map<String, String> envVars) {
         Integer result = null;
         if (command != null && !command.isEmpty() && out != null) {
@@ -63,18 +94,22 @@ public enum OS {
                     LOGGER.debug("Start command: {}", command.stream().collect(Collectors.joining(" ", "\"", "\"")));
                 }
                 List<String> processOut;
-                ProcessBuilder builder = new ProcessBuilder(command);
-                // put additional environment variables if needed
-                if (envVars != null) {
-                    builder.environment().putAll(envVars);
-                }
-                if (homeFolder != null) builder.directory(new File(homeFolder));
-
-                Process process = builder.start();
-                OSRunner runner = new OSRunner(process);
+                OSRunner runner;
+                long started;
+                ProcessScheduler.Permit permit = acquire(command, 0);
+                try {
+                    started = System.nanoTime();
+                    Process process = start(command, homeFolder, envVars);
+                    runner = new OSRunner(process);
 
-                result = runner.run(timeout * 1000l);
-                process.destroy();
+                    result = runner.run(timeout);
+                } finally {
+                    release(permit);
+                }
+                Metrics metrics = MetricsRegistry.getMetrics();
+                if (metrics.isEnabled()) {
+                    metrics.processExit(name(command), result, result == null, System.nanoTime() - started);
+                }
 
                 LOGGER.debug("Pumpers finished.");
                 processOut = runner.getOut();
@@ -88,8 +123,303 @@ public enum OS {
 
             } catch (IOException e) {
                 LOGGER.error("IOError", e);
+            } catch (RejectedExecutionException e) {
+                LOGGER.error("Rejected", e);
             }
         }
         return result;
     }
+
+    /**
+     * Executes the command streaming its output to the consumers of the options, the result keeps
+     * the output allowed by the capture policy of the options.
+     *
+     * @param command command line
+     * @param options execution options
+     * @return exit code, null on timeout, and the retained output
+     * @throws IOException if the process can't be started
+     * @throws RejectedExecutionException if rejected by the {@link ProcessScheduler#getDefault() default scheduler}
+     */
+    public ProcessResult execCommandLine(List<String> command, ExecOptions options) throws IOException {
+        if (command == null || command.isEmpty()) {
+            throw new IllegalArgumentException("Command is required");
+        }
+        return execCommandLine(command, options, builders(options));
+    }
+
+    ProcessResult execCommandLine(List<String> command, ExecOptions options, Function<List<String>, ProcessBuilder> builders) throws IOException {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Start command: {}", command.stream().collect(Collectors.joining(" ", "\"", "\"")));
+        }
+        OutputCapture capture = new OutputCapture(options);
+        long started;
+        Integer exitCode;
+        Termination termination;
+        ProcessScheduler.Permit permit = acquire(command, options.getPriority());
+        try {
+            started = System.nanoTime();
+            Process process = builders.apply(command).start();
+            process.getOutputStream().close();
+            OSRunner runner = new OSRunner(process, capture.getStdoutSink(), capture.getStderrSink()).configure(options);
+            exitCode = runner.run(options.getTimeoutNanos(), TimeUnit.NANOSECONDS);
+            termination = runner.getTermination();
+            runner.checkFailure();
+        } finally {
+            release(permit);
+        }
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.processExit(name(command), exitCode, termination == Termination.TIMED_OUT, System.nanoTime() - started);
+        }
+        LOGGER.debug("Exit code: {} {}", exitCode, termination);
+        return capture.toResult(termination, exitCode);
+    }
+
+    /**
+     * Executes the commands as a pipeline, the output of each stage is the input of the next one. On Java 9+ the stages
+     * are connected by operating system pipes, so the data doesn't pass through the JVM and no shell is needed.
+     * The output of the last stage is captured according to the options, the error lines of all stages go to
+     * the error capture, the stderr consumer may be called by several threads.
+     *
+     * @param commands command lines of the stages
+     * @param options  execution options, the timeout applies to the whole pipeline
+     * @return exit code and output of the last stage and the exit codes of all stages
+     * @throws IOException if a stage can't be started
+     * @throws RejectedExecutionException if rejected by the {@link ProcessScheduler#getDefault() default scheduler}
+     */
+    public PipelineResult execPipeline(List<List<String>> commands, ExecOptions options) throws IOException {
+        if (commands == null || commands.isEmpty() || commands.stream().anyMatch(command -> command == null || command.isEmpty())) {
+            throw new IllegalArgumentException("Commands are required");
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Start pipeline: {}", commands.stream().map(command -> String.join(" ", command))
+                    .collect(Collectors.joining(" | ", "\"", "\"")));
+        }
+        List<ProcessBuilder> builders = new ArrayList<>(commands.size());
+        for (List<String> command : commands) {
+            builders.add(builder(command, options.getHomeFolder(), options.getEnvVars()));
+        }
+        OutputCapture capture = new OutputCapture(options);
+        List<Integer> exitCodes = new ArrayList<>(commands.size());
+        Integer exitCode;
+        Termination termination;
+        ProcessScheduler.Permit permit = acquire(commands.get(0), options.getPriority());
+        try {
+            long started = System.nanoTime();
+            ProcessPipeline pipeline = new ProcessPipeline(builders);
+            List<Process> processes = pipeline.getProcesses();
+            processes.get(0).getOutputStream().close();
+            List<Future<?>> errorPumpers = new ArrayList<>();
+            for (Process process : processes.subList(0, processes.size() - 1)) {
+                errorPumpers.add(OSRunner.startPumper(process.getErrorStream(), capture.getStderrSink()));
+            }
+            Process last = processes.get(processes.size() - 1);
+            OSRunner runner = new OSRunner(last, capture.getStdoutSink(), capture.getStderrSink()).configure(options);
+            exitCode = runner.run(options.getTimeoutNanos(), TimeUnit.NANOSECONDS);
+            termination = runner.getTermination();
+            long drainMillis = TimeUnit.NANOSECONDS.toMillis(options.getDrainTimeoutNanos());
+            try {
+                for (Process process : processes.subList(0, processes.size() - 1)) {
+                    long remaining = options.getTimeoutNanos() - (System.nanoTime() - started);
+                    if (termination == Termination.KILLED || !process.waitFor(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                        ProcessKiller.terminate(process, options.getGracePeriodNanos());
+                        exitCodes.add(null);
+                    } else {
+                        exitCodes.add(process.exitValue());
+                    }
+                }
+                pipeline.join(drainMillis);
+                Throwable failure = null;
+                for (Future<?> pumper : errorPumpers) {
+                    Throwable pumperFailure = OSRunner.await(pumper, drainMillis);
+                    failure = failure == null ? pumperFailure : failure;
+                }
+                runner.checkFailure();
+                OSRunner.rethrow(failure);
+            } catch (InterruptedException e) {
+                processes.forEach(process -> ProcessKiller.terminate(process, 0));
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted pipeline");
+            }
+            exitCodes.add(exitCode);
+            Metrics metrics = MetricsRegistry.getMetrics();
+            if (metrics.isEnabled()) {
+                long duration = System.nanoTime() - started;
+                for (int i = 0; i < commands.size(); i++) {
+                    metrics.processExit(name(commands.get(i)), exitCodes.get(i), exitCodes.get(i) == null, duration);
+                }
+            }
+        } finally {
+            release(permit);
+        }
+        LOGGER.debug("Exit codes: {}", exitCodes);
+        return new PipelineResult(capture.toResult(termination, exitCode), exitCodes);
+    }
+
+    /**
+     * Executes the command redirecting its output to the file by the operating system, the bytes never pass
+     * through the JVM. Error lines are captured according to the options.
+     *
+     * @param command command line
+     * @param target  file to write the output to, replaced if exists
+     * @param options execution options
+     * @return exit code, null on timeout, and the size of the file
+     * @throws IOException if the process can't be started
+     * @throws RejectedExecutionException if rejected by the {@link ProcessScheduler#getDefault() default scheduler}
+     */
+    public TransferResult execToFile(List<String> command, Path target, ExecOptions options) throws IOException {
+        return transfer(command, options, builder -> builder.redirectOutput(ProcessBuilder.Redirect.to(target.toFile())),
+                // the output stream of a redirected process is empty
+                (process, stderr) -> new OSRunner(process, line -> { }, stderr), runner -> target.toFile().length());
+    }
+
+    /**
+     * Executes the command copying its output bytes to the channel through a pooled buffer without decoding
+     * or logging them. Error lines are captured according to the options.
+     *
+     * @param command command line
+     * @param target  channel to write the output to, not closed
+     * @param options execution options
+     * @return exit code, null on timeout, and the number of bytes written to the channel
+     * @throws IOException if the process can't be started or the channel fails, the process is terminated then
+     * @throws RejectedExecutionException if rejected by the {@link ProcessScheduler#getDefault() default scheduler}
+     */
+    public TransferResult execToChannel(List<String> command, WritableByteChannel target, ExecOptions options) throws IOException {
+        return transfer(command, options, builder -> builder,
+                (process, stderr) -> new OSRunner(process, target, stderr), OSRunner::getBytes);
+    }
+
+    private TransferResult transfer(List<String> command, ExecOptions options, UnaryOperator<ProcessBuilder> redirect,
+                                    BiFunction<Process, Consumer<String>, OSRunner> runnerFactory,
+                                    ToLongFunction<OSRunner> size) throws IOException {
+        if (command == null || command.isEmpty()) {
+            throw new IllegalArgumentException("Command is required");
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Start command: {}", command.stream().collect(Collectors.joining(" ", "\"", "\"")));
+        }
+        OutputCapture capture = new OutputCapture(options);
+        long started;
+        Integer exitCode;
+        Termination termination;
+        OSRunner runner;
+        ProcessScheduler.Permit permit = acquire(command, options.getPriority());
+        try {
+            started = System.nanoTime();
+            Process process = redirect.apply(builder(command, options.getHomeFolder(), options.getEnvVars())).start();
+            process.getOutputStream().close();
+            runner = runnerFactory.apply(process, capture.getStderrSink()).configure(options);
+            exitCode = runner.run(options.getTimeoutNanos(), TimeUnit.NANOSECONDS);
+            termination = runner.getTermination();
+            runner.checkFailure();
+        } finally {
+            release(permit);
+        }
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.processExit(name(command), exitCode, termination == Termination.TIMED_OUT, System.nanoTime() - started);
+        }
+        LOGGER.debug("Exit code: {} {}", exitCode, termination);
+        return new TransferResult(termination, exitCode, size.applyAsLong(runner), capture.toResult(termination, exitCode).getStderr());
+    }
+
+    /**
+     * Starts the command and returns immediately. The output of all asynchronously executed commands is read
+     * by one shared thread, so many concurrent commands don't hold a pair of pumper threads each.
+     *
+     * @param command command line
+     * @param options execution options
+     * @return execution completed on the executor of the options when the process exits, times out or is killed,
+     * cancelling it terminates the process tree. Fails with {@link RejectedExecutionException} if rejected by
+     * the {@link ProcessScheduler#getDefault() default scheduler}
+     */
+    public ProcessExecution execAsync(List<String> command, ExecOptions options) {
+        if (command == null || command.isEmpty()) {
+            throw new IllegalArgumentException("Command is required");
+        }
+        return execAsync(command, options, builders(options));
+    }
+
+    ProcessExecution execAsync(List<String> command, ExecOptions options, Function<List<String>, ProcessBuilder> builders) {
+        ProcessExecution execution = new ProcessExecution();
+        ProcessScheduler scheduler = ProcessScheduler.getDefault();
+        if (scheduler == null) {
+            startAsync(command, options, builders, execution);
+            return execution;
+        }
+        scheduler.acquireAsync(name(command), options.getPriority()).whenComplete((permit, rejected) -> {
+            if (rejected != null) {
+                execution.completeExceptionally(rejected);
+                return;
+            }
+            execution.whenComplete((result, error) -> permit.close());
+            if (!execution.isDone()) {
+                startAsync(command, options, builders, execution);
+            }
+        });
+        return execution;
+    }
+
+    private void startAsync(List<String> command, ExecOptions options, Function<List<String>, ProcessBuilder> builders,
+                            ProcessExecution execution) {
+        try {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Start command: {}", command.stream().collect(Collectors.joining(" ", "\"", "\"")));
+            }
+            Process process = builders.apply(command).start();
+            // the poller never writes to the process
+            process.getOutputStream().close();
+            ProcessPoller.getInstance().register(command, process, options, execution);
+        } catch (IOException e) {
+            LOGGER.error("IOError", e);
+            execution.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return permit of the default scheduler or null if processes are not limited
+     */
+    static ProcessScheduler.Permit acquire(List<String> command, int priority) throws IOException {
+        ProcessScheduler scheduler = ProcessScheduler.getDefault();
+        if (scheduler == null) {
+            return null;
+        }
+        try {
+            return scheduler.acquire(name(command), priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queued: " + name(command));
+        }
+    }
+
+    /**
+     * @param permit permit returned by {@link #acquire(List, int)}, may be null
+     */
+    static void release(ProcessScheduler.Permit permit) {
+        if (permit != null) {
+            permit.close();
+        }
+    }
+
+    static String name(List<String> command) {
+        return new File(command.get(0)).getName();
+    }
+
+    private static Function<List<String>, ProcessBuilder> builders(ExecOptions options) {
+        return command -> builder(command, options.getHomeFolder(), options.getEnvVars());
+    }
+
+    private static Process start(List<String> command, String homeFolder, Map<String, String> envVars) throws IOException {
+        return builder(command, homeFolder, envVars).start();
+    }
+
+    private static ProcessBuilder builder(List<String> command, String homeFolder, Map<String, String> envVars) {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        // put additional environment variables if needed
+        if (envVars != null) {
+            builder.environment().putAll(envVars);
+        }
+        if (homeFolder != null) builder.directory(new File(homeFolder));
+        return builder;
+    }
 }
\ No newline at end of file
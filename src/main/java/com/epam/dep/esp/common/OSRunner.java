@@ -18,109 +18,220 @@ package com.epam.dep.esp.common;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 public class OSRunner {
 
     protected static final Logger LOGGER = LoggerFactory.getLogger(OSRunner.class);
     public static final String INTERRUPTED = "Interrupted";
     private static final int THREAD_TIME_OUT = 10000;
-    private int timeout;
+    private static final long GRACE_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private long timeout;
+    private long graceNanos = GRACE_PERIOD_NANOS;
+    private Termination termination;
 
     private final Process process;
     private List<String> result;
-    private final StreamPumper errorPumper;
-    private final StreamPumper stdPumper;
+    private final List<String> errorOut;
+    private final List<String> stdOut;
+    private final Future<?> errorPumper;
+    private final Future<?> stdPumper;
+    private final Callable<?> stdReader;
+    private Throwable failure;
 
     OSRunner(Process process) {
         this(process, THREAD_TIME_OUT);
     }
 
     OSRunner(Process process, int timeout) {
+        this(process, timeout, new ArrayList<>(), new ArrayList<>());
+    }
+
+    /**
+     * Streams the output to the consumers instead of collecting it, {@link #getOut()} stays empty.
+     *
+     * @param process        started process
+     * @param stdoutConsumer consumer of output lines, called on the output pumper thread
+     * @param stderrConsumer consumer of error lines, called on the error pumper thread
+     */
+    OSRunner(Process process, Consumer<String> stdoutConsumer, Consumer<String> stderrConsumer) {
+        this(process, THREAD_TIME_OUT, null, null, Executors.callable(new StreamPumper(process.getInputStream(), stdoutConsumer)), stderrConsumer);
+    }
+
+    /**
+     * Copies the output bytes to the channel without decoding, see {@link #getBytes()}. If the channel fails
+     * the process is terminated and the failure is rethrown by {@link #checkFailure()}.
+     *
+     * @param process        started process
+     * @param stdout         target channel, not closed
+     * @param stderrConsumer consumer of error lines, called on the error pumper thread
+     */
+    OSRunner(Process process, WritableByteChannel stdout, Consumer<String> stderrConsumer) {
+        this(process, THREAD_TIME_OUT, null, null, new ChannelPumper(process, stdout), stderrConsumer);
+    }
+
+    private OSRunner(Process process, int timeout, List<String> stdOut, List<String> errorOut) {
+        this(process, timeout, stdOut, errorOut, Executors.callable(new StreamPumper(process.getInputStream(), stdOut::add)), errorOut::add);
+    }
+
+    private OSRunner(Process process, int timeout, List<String> stdOut, List<String> errorOut,
+                     Callable<?> stdReader, Consumer<String> stderrConsumer) {
         this.process = process;
-        this.errorPumper = new StreamPumper(process.getErrorStream());
-        this.stdPumper = new StreamPumper(process.getInputStream());
+        this.stdOut = stdOut;
+        this.errorOut = errorOut;
+        this.stdReader = stdReader;
         this.timeout = timeout;
         result = new ArrayList<>();
-        errorPumper.start();
-        stdPumper.start();
+        this.errorPumper = PumperExecutor.get().submit(new StreamPumper(process.getErrorStream(), stderrConsumer));
+        this.stdPumper = PumperExecutor.get().submit(stdReader);
     }
 
-    @SuppressWarnings("squid:S3776")
+    /**
+     * @param processTimeout time to wait for the process in seconds
+     * @return exit code or null if the process did not exit in time
+     */
     public Integer run(long processTimeout) {
-        boolean error = false;
+        return run(processTimeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waits for the process and then for the pumpers to read the rest of the output. At the timeout or if the thread
+     * is interrupted the process tree is terminated, see {@link #getTermination()}.
+     *
+     * @param processTimeout time to wait for the process
+     * @param unit           unit of the timeout
+     * @return exit code or null if the process did not exit in time
+     */
+    public Integer run(long processTimeout, TimeUnit unit) {
+        Integer exitCode = null;
+        boolean interrupted = false;
         try {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Wait for {}", process);
             }
-            if (process.waitFor(processTimeout, TimeUnit.SECONDS)) {
-                return Integer.valueOf(process.exitValue());
+            if (process.waitFor(processTimeout, unit)) {
+                exitCode = Integer.valueOf(process.exitValue());
+                termination = Termination.EXITED;
             } else {
-                return null;
+                termination = Termination.TIMED_OUT;
+                ProcessKiller.terminate(process, graceNanos);
             }
-        } catch (InterruptedException ignore) {
-            LOGGER.error(INTERRUPTED, ignore);
-            error = true;
+        } catch (InterruptedException e) {
+            LOGGER.error(INTERRUPTED, e);
+            interrupted = true;
+            termination = Termination.KILLED;
+            ProcessKiller.terminate(process, graceNanos);
         } finally {
-            if (!error) {
-                try {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Wait for error stream processing.");
-                    }
-                    errorPumper.join(timeout);
-                } catch (InterruptedException e) {
-                    LOGGER.error(INTERRUPTED, e);
-                }
-                try {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Wait for std stream processing.");
-                    }
-                    stdPumper.join(timeout);
-                } catch (InterruptedException e) {
-                    LOGGER.error(INTERRUPTED, e);
-                }
+            // the pumpers reach the end of the streams once the process tree is gone
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Wait for error stream processing.");
             }
-
-            if (errorPumper.isAlive()) {
-                errorPumper.interrupt();
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Kill Error Pumper {} {}}", process, errorPumper);
-                }
+            drain(errorPumper);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Wait for std stream processing.");
+            }
+            drain(stdPumper);
+            if (errorOut != null) {
+                result.addAll(errorOut);
+                result.addAll(stdOut);
             }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return exitCode;
+    }
 
-            if (stdPumper.isAlive()) {
-                stdPumper.interrupt();
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Kill Out Pumper {} {}", process, stdPumper);
-                }
+    /**
+     * @return how the process finished, null until {@link #run(long, TimeUnit)} returned
+     */
+    Termination getTermination() {
+        return termination;
+    }
+
+    /**
+     * @param options execution options providing the grace period and the drain timeout
+     * @return this runner
+     */
+    OSRunner configure(ExecOptions options) {
+        this.graceNanos = options.getGracePeriodNanos();
+        this.timeout = TimeUnit.NANOSECONDS.toMillis(options.getDrainTimeoutNanos());
+        return this;
+    }
+
+    /**
+     * Rethrows the first failure of an output consumer, the pumpers read the streams to the end regardless.
+     *
+     * @throws IOException if the output couldn't be consumed
+     */
+    void checkFailure() throws IOException {
+        rethrow(failure);
+    }
+
+    /**
+     * @param failure failure returned by {@link #await(Future, long)}, may be null
+     * @throws IOException if the failure is one
+     */
+    static void rethrow(Throwable failure) throws IOException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+
+    private void drain(Future<?> pumper) {
+        try {
+            Throwable pumperFailure = await(pumper, timeout);
+            if (failure == null) {
+                failure = pumperFailure;
             }
+        } catch (InterruptedException e) {
+            LOGGER.error(INTERRUPTED, e);
+            pumper.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            if (error) {
-                try {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Wait for error die.");
-                    }
-                    errorPumper.join(timeout);
-                } catch (InterruptedException e) {
-                    LOGGER.error(INTERRUPTED, e);
-                }
-                try {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Wait for std die.");
-                    }
-                    stdPumper.join(timeout);
-                } catch (InterruptedException e) {
-                    LOGGER.error(INTERRUPTED, e);
-                }
+    /**
+     * Waits for a pumper to reach the end of its stream and interrupts it if it doesn't in time.
+     *
+     * @param pumper pumper started by {@link #startPumper(InputStream, Consumer)}
+     * @param millis time to wait
+     * @return failure of the pumper, e.g. of its consumer, or null
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    static Throwable await(Future<?> pumper, long millis) throws InterruptedException {
+        try {
+            pumper.get(millis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            pumper.cancel(true);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Kill Pumper {}", pumper);
             }
-            result.addAll(errorPumper.getOut());
-            result.addAll(stdPumper.getOut());
+        } catch (CancellationException e) {
+            LOGGER.error("Stream pumper error: ", e);
+        } catch (ExecutionException e) {
+            LOGGER.error("Stream pumper error: ", e);
+            return e.getCause();
         }
         return null;
     }
@@ -129,41 +240,119 @@ public class OSRunner {
         return result;
     }
 
-    private class StreamPumper extends Thread {
-        private static final int SLEEP_TIME = 0;
+    /**
+     * @return number of output bytes copied to the channel, 0 unless the runner copies bytes
+     */
+    long getBytes() {
+        return stdReader instanceof ChannelPumper ? ((ChannelPumper) stdReader).bytes : 0;
+    }
+
+    /**
+     * @param is  stream to read lines from
+     * @param out line consumer
+     * @return pumper reading the stream to its end
+     */
+    static Future<?> startPumper(InputStream is, Consumer<String> out) {
+        return PumperExecutor.get().submit(new StreamPumper(is, out));
+    }
 
+    /**
+     * Reads the stream to its end even if the consumer fails, so the process is never blocked on a full pipe;
+     * the lines after the first consumer failure are only logged and the failure is rethrown at the end.
+     */
+    private static class StreamPumper implements Runnable {
         private boolean endOfStream = false;
-        private final List<String> out = new ArrayList<>();
+        private final Consumer<String> out;
         private InputStream is;
+        private RuntimeException consumerFailure;
 
-        public StreamPumper(InputStream is) {
+        public StreamPumper(InputStream is, Consumer<String> out) {
             this.is = is;
+            this.out = out;
         }
 
-        public List<String> getOut() {
-            return out;
+        private void pumpStream(LineDecoder decoder) throws IOException {
+            if (decoder.read(is, Integer.MAX_VALUE, this::add) < 0) {
+                endOfStream = true;
+            }
         }
 
-        private void pumpStream(BufferedReader din) throws IOException {
-            String line = din.readLine();
-            if (line != null) {
-                out.add(line);
-                LOGGER.info(line);
-            } else {
-                endOfStream = true;
+        private void add(String line) {
+            LOGGER.info(line);
+            if (consumerFailure == null) {
+                try {
+                    out.accept(line);
+                } catch (RuntimeException e) {
+                    consumerFailure = e;
+                }
             }
         }
 
         @Override
         public void run() {
-            try (BufferedReader din = new BufferedReader(new InputStreamReader(is))) {
-                while (!endOfStream && !isInterrupted()) {
-                    pumpStream(din);
-                    sleep(SLEEP_TIME);
+            LineDecoder decoder = new LineDecoder(Charset.defaultCharset(), BufferPool.getInstance());
+            try {
+                while (!endOfStream && !Thread.currentThread().isInterrupted()) {
+                    pumpStream(decoder);
                 }
-            } catch (InterruptedException | IOException ie) {
+            } catch (IOException | RuntimeException ie) {
                 LOGGER.error("Stream pumper error: ", ie);
+            } finally {
+                decoder.release();
+            }
+            if (consumerFailure != null) {
+                throw consumerFailure;
+            }
+        }
+    }
+
+    /**
+     * Copies the stream to the channel. A failed write terminates the process, nobody receives its output anymore,
+     * and is thrown once the copying stopped.
+     */
+    private static class ChannelPumper implements Callable<Void> {
+        private final Process process;
+        private final InputStream is;
+        private final WritableByteChannel out;
+        private volatile long bytes;
+
+        ChannelPumper(Process process, WritableByteChannel out) {
+            this.process = process;
+            this.is = process.getInputStream();
+            this.out = out;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            BufferPool pool = BufferPool.getInstance();
+            byte[] buffer = pool.acquireBytes();
+            IOException writeFailure = null;
+            try {
+                ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                long total = 0;
+                int count;
+                while (writeFailure == null && !Thread.currentThread().isInterrupted() && (count = is.read(buffer)) >= 0) {
+                    wrapped.clear().limit(count);
+                    try {
+                        while (wrapped.hasRemaining()) {
+                            out.write(wrapped);
+                        }
+                    } catch (IOException e) {
+                        writeFailure = e;
+                        ProcessKiller.terminate(process, 0);
+                    }
+                    total += count - wrapped.remaining();
+                    bytes = total;
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Stream pumper error: ", e);
+            } finally {
+                pool.release(buffer);
+            }
+            if (writeFailure != null) {
+                throw writeFailure;
             }
+            return null;
         }
     }
 }
@@ -0,0 +1,71 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the head and a ring of the tail lines within the limits of a {@link CapturePolicy}.
+ * Synchronized because a merged buffer is filled by both stream readers.
+ */
+class OutputBuffer {
+    private final CapturePolicy policy;
+    private final List<OutputLine> head = new ArrayList<>();
+    private final Deque<OutputLine> tail = new ArrayDeque<>();
+    private final long[] dropped = new long[OutputLine.Stream.values().length];
+    private long headChars;
+    private long tailChars;
+    private boolean headFull;
+
+    OutputBuffer(CapturePolicy policy) {
+        this.policy = policy;
+        this.headFull = policy.getHeadLines() == 0;
+    }
+
+    synchronized void add(OutputLine line) {
+        int length = line.getText().length();
+        if (!headFull) {
+            if (head.size() < policy.getHeadLines() && headChars + length <= policy.getMaxChars()) {
+                head.add(line);
+                headChars += length;
+                return;
+            }
+            // the head stays contiguous, every later line goes to the tail
+            headFull = true;
+        }
+        tail.addLast(line);
+        tailChars += length;
+        while (!tail.isEmpty() && (tail.size() > policy.getTailLines() || tailChars > policy.getMaxChars())) {
+            OutputLine removed = tail.removeFirst();
+            tailChars -= removed.getText().length();
+            dropped[removed.getStream().ordinal()]++;
+        }
+    }
+
+    synchronized List<OutputLine> getLines() {
+        List<OutputLine> lines = new ArrayList<>(head.size() + tail.size());
+        lines.addAll(head);
+        lines.addAll(tail);
+        return lines;
+    }
+
+    synchronized long getDropped(OutputLine.Stream stream) {
+        return dropped[stream.ordinal()];
+    }
+}
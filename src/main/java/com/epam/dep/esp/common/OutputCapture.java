@@ -0,0 +1,103 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Captures the output of one execution according to its {@link ExecOptions}.
+ */
+class OutputCapture {
+    private final CapturePolicy policy;
+    private final AtomicLong sequence = new AtomicLong();
+    private final OutputBuffer stdout;
+    private final OutputBuffer stderr;
+    private final Consumer<String> stdoutCapture;
+    private final Consumer<String> stderrCapture;
+    private final Consumer<String> stdoutSink;
+    private final Consumer<String> stderrSink;
+
+    OutputCapture(ExecOptions options) {
+        this.policy = options.getCapture();
+        this.stdout = new OutputBuffer(policy);
+        this.stderr = policy.isMerged() ? stdout : new OutputBuffer(policy);
+        this.stdoutCapture = capture(OutputLine.Stream.STDOUT, stdout);
+        this.stderrCapture = capture(OutputLine.Stream.STDERR, stderr);
+        this.stdoutSink = sink(stdoutCapture, options.getStdoutConsumer());
+        this.stderrSink = sink(stderrCapture, options.getStderrConsumer());
+    }
+
+    /**
+     * @return sink capturing a stdout line and passing it to the stdout consumer of the options
+     */
+    Consumer<String> getStdoutSink() {
+        return stdoutSink;
+    }
+
+    /**
+     * @return sink capturing a stderr line and passing it to the stderr consumer of the options
+     */
+    Consumer<String> getStderrSink() {
+        return stderrSink;
+    }
+
+    /**
+     * @return sink capturing a stdout line without calling the consumer of the options
+     */
+    Consumer<String> getStdoutCapture() {
+        return stdoutCapture;
+    }
+
+    /**
+     * @return sink capturing a stderr line without calling the consumer of the options
+     */
+    Consumer<String> getStderrCapture() {
+        return stderrCapture;
+    }
+
+    ProcessResult toResult(Integer exitCode) {
+        return toResult(exitCode == null ? Termination.TIMED_OUT : Termination.EXITED, exitCode);
+    }
+
+    ProcessResult toResult(Termination termination, Integer exitCode) {
+        List<OutputLine> lines = policy.isMerged() ? stdout.getLines() : merge(stdout.getLines(), stderr.getLines());
+        return new ProcessResult(termination, exitCode, lines, stdout.getDropped(OutputLine.Stream.STDOUT), stderr.getDropped(OutputLine.Stream.STDERR));
+    }
+
+    private Consumer<String> capture(OutputLine.Stream stream, OutputBuffer buffer) {
+        return line -> buffer.add(new OutputLine(stream, sequence.getAndIncrement(),
+                policy.isTimestamps() ? System.currentTimeMillis() : 0, line));
+    }
+
+    private static Consumer<String> sink(Consumer<String> capture, Consumer<String> consumer) {
+        return consumer == null ? capture : capture.andThen(consumer);
+    }
+
+    private static List<OutputLine> merge(List<OutputLine> first, List<OutputLine> second) {
+        List<OutputLine> lines = new ArrayList<>(first.size() + second.size());
+        int i = 0;
+        int j = 0;
+        while (i < first.size() && j < second.size()) {
+            lines.add(first.get(i).getSequence() < second.get(j).getSequence() ? first.get(i++) : second.get(j++));
+        }
+        lines.addAll(first.subList(i, first.size()));
+        lines.addAll(second.subList(j, second.size()));
+        return lines;
+    }
+}
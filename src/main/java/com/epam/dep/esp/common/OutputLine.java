@@ -0,0 +1,64 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+/**
+ * Captured line of process output.
+ */
+public class OutputLine {
+    public enum Stream {
+        STDOUT, STDERR
+    }
+
+    private final Stream stream;
+    private final long sequence;
+    private final long timestamp;
+    private final String text;
+
+    public OutputLine(Stream stream, long sequence, long timestamp, String text) {
+        this.stream = stream;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.text = text;
+    }
+
+    public Stream getStream() {
+        return stream;
+    }
+
+    /**
+     * @return position of the line among the lines of both streams of the execution, starting from 0
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return time the line was read in milliseconds since the epoch, 0 unless enabled by {@link CapturePolicy}
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a pipeline: the exit code and output of the last stage and the exit codes of all stages.
+ */
+public class PipelineResult extends ProcessResult {
+    private final List<Integer> exitCodes;
+
+    public PipelineResult(ProcessResult last, List<Integer> exitCodes) {
+        super(last);
+        this.exitCodes = Collections.unmodifiableList(exitCodes);
+    }
+
+    /**
+     * @return exit code of every stage in order, null for the stages which did not finish in time
+     */
+    public List<Integer> getExitCodes() {
+        return exitCodes;
+    }
+
+    /**
+     * @return true if every stage exited with 0
+     */
+    public boolean isSuccess() {
+        return exitCodes.stream().allMatch(code -> code != null && code == 0);
+    }
+
+    @Override
+    public String toString() {
+        return "PipelineResult{exitCodes=" + exitCodes + ", stdout=" + getStdout().size() + " lines, stderr=" + getStderr().size() + " lines}";
+    }
+}
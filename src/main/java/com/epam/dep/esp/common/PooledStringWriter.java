@@ -0,0 +1,127 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Not thread-safe replacement of {@link java.io.StringWriter} which collects characters in pooled segments
+ * instead of a growing array. {@link #close()} returns the segments to the pool, so it must be called
+ * once the content was taken with {@link #toString()}.
+ */
+public class PooledStringWriter extends Writer {
+    private final BufferPool pool;
+    private final List<char[]> segments = new ArrayList<>();
+    private char[] current;
+    private int position;
+    private int length;
+
+    public PooledStringWriter() {
+        this(BufferPool.getInstance());
+    }
+
+    public PooledStringWriter(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(int c) {
+        ensureCapacity();
+        current[position++] = (char) c;
+        length++;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        while (len > 0) {
+            ensureCapacity();
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(cbuf, off, current, position, count);
+            position += count;
+            length += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        while (len > 0) {
+            ensureCapacity();
+            int count = Math.min(len, current.length - position);
+            str.getChars(off, off + count, current, position);
+            position += count;
+            length += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        String str = String.valueOf(csq);
+        write(str, 0, str.length());
+        return this;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        if (segments.isEmpty()) {
+            return current == null ? "" : new String(current, 0, position);
+        }
+        char[] result = new char[length];
+        int offset = 0;
+        for (char[] segment : segments) {
+            System.arraycopy(segment, 0, result, offset, segment.length);
+            offset += segment.length;
+        }
+        System.arraycopy(current, 0, result, offset, position);
+        return new String(result);
+    }
+
+    @Override
+    public void flush() {
+        // nothing to flush
+    }
+
+    @Override
+    public void close() {
+        for (char[] segment : segments) {
+            pool.release(segment);
+        }
+        segments.clear();
+        pool.release(current);
+        current = null;
+        position = 0;
+        length = 0;
+    }
+
+    private void ensureCapacity() {
+        if (current == null) {
+            current = pool.acquireChars();
+        } else if (position == current.length) {
+            segments.add(current);
+            current = pool.acquireChars();
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handle of an asynchronously executed command, completed with its result.
+ * {@link #kill()} terminates the process tree and completes the result with {@link Termination#KILLED},
+ * {@link #cancel(boolean)} terminates it as well and discards the result.
+ */
+public class ProcessExecution extends CompletableFuture<ProcessResult> {
+    private volatile boolean started;
+    private volatile boolean killRequested;
+
+    /**
+     * Terminates the process and its descendants, the process is given the grace period of the options to stop.
+     * A queued command is not started.
+     *
+     * @return false if the execution has already completed
+     */
+    public boolean kill() {
+        if (isDone()) {
+            return false;
+        }
+        killRequested = true;
+        if (!started) {
+            complete(new ProcessResult(Termination.KILLED, null, Collections.emptyList(), 0, 0));
+        } else {
+            ProcessPoller.getInstance().wakeUp();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            killRequested = true;
+            ProcessPoller.getInstance().wakeUp();
+        }
+        return cancelled;
+    }
+
+    boolean isKillRequested() {
+        return killRequested;
+    }
+
+    void markStarted() {
+        started = true;
+    }
+}
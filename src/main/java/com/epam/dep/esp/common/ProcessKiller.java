@@ -0,0 +1,124 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Terminates a process together with its descendants: they are asked to stop first and killed forcibly
+ * after a grace period. Descendants are found with {@code ProcessHandle} on Java 9+, on Java 8 only
+ * the process itself can be terminated.
+ */
+final class ProcessKiller {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(ProcessKiller.class);
+    private static final Method TO_HANDLE;
+    private static final Method DESCENDANTS;
+    private static final Method DESTROY;
+    private static final Method DESTROY_FORCIBLY;
+    private static final Method IS_ALIVE;
+
+    static {
+        Method toHandle = null;
+        Method descendants = null;
+        Method destroy = null;
+        Method destroyForcibly = null;
+        Method isAlive = null;
+        try {
+            Class<?> handle = Class.forName("java.lang.ProcessHandle");
+            toHandle = Process.class.getMethod("toHandle");
+            descendants = handle.getMethod("descendants");
+            destroy = handle.getMethod("destroy");
+            destroyForcibly = handle.getMethod("destroyForcibly");
+            isAlive = handle.getMethod("isAlive");
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            toHandle = null;
+        }
+        TO_HANDLE = toHandle;
+        DESCENDANTS = descendants;
+        DESTROY = destroy;
+        DESTROY_FORCIBLY = destroyForcibly;
+        IS_ALIVE = isAlive;
+    }
+
+    private ProcessKiller() {
+    }
+
+    /**
+     * @return true if descendants can be terminated on this runtime
+     */
+    static boolean isTreeSupported() {
+        return TO_HANDLE != null;
+    }
+
+    /**
+     * Asks the process and its descendants to stop and kills the survivors forcibly after the grace period.
+     * Doesn't block, the forcible kill runs on the {@link ProcessTimer}.
+     *
+     * @param process    process to terminate
+     * @param graceNanos time given to stop gracefully, 0 to kill forcibly at once
+     */
+    static void terminate(Process process, long graceNanos) {
+        // descendants are reparented once their parent dies, so they are collected first
+        List<Object> descendants = descendants(process);
+        if (graceNanos <= 0) {
+            kill(process, descendants);
+            return;
+        }
+        for (Object descendant : descendants) {
+            invoke(DESTROY, descendant);
+        }
+        process.destroy();
+        ProcessTimer.schedule(() -> kill(process, descendants), graceNanos);
+    }
+
+    private static void kill(Process process, List<Object> descendants) {
+        if (process.isAlive()) {
+            process.destroyForcibly();
+        }
+        for (Object descendant : descendants) {
+            if (Boolean.TRUE.equals(invoke(IS_ALIVE, descendant))) {
+                invoke(DESTROY_FORCIBLY, descendant);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> descendants(Process process) {
+        if (TO_HANDLE == null) {
+            return Collections.emptyList();
+        }
+        Object handle = invoke(TO_HANDLE, process);
+        Object descendants = handle == null ? null : invoke(DESCENDANTS, handle);
+        return descendants == null ? Collections.emptyList() : ((Stream<Object>) descendants).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private static Object invoke(Method method, Object target) {
+        try {
+            return method.invoke(target);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Unable to call {}", method, e);
+            return null;
+        }
+    }
+}
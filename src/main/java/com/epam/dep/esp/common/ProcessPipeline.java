@@ -0,0 +1,118 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Starts the stages of a pipeline connected stdout to stdin. On Java 9+ {@code ProcessBuilder.startPipeline}
+ * connects them with operating system pipes, on Java 8 copier tasks move the bytes through pooled buffers.
+ */
+class ProcessPipeline {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(ProcessPipeline.class);
+    private static final Method START_PIPELINE = findStartPipeline();
+
+    private final List<Process> processes;
+    private final List<Future<?>> copiers = new ArrayList<>();
+
+    ProcessPipeline(List<ProcessBuilder> builders) throws IOException {
+        this.processes = START_PIPELINE != null ? startNative(builders) : startCopying(builders);
+    }
+
+    static boolean isNative() {
+        return START_PIPELINE != null;
+    }
+
+    List<Process> getProcesses() {
+        return processes;
+    }
+
+    /**
+     * Waits for the copier threads after the stages exited or were destroyed.
+     */
+    void join(long millis) throws InterruptedException {
+        for (Future<?> copier : copiers) {
+            OSRunner.await(copier, millis);
+        }
+    }
+
+    private static Method findStartPipeline() {
+        try {
+            return ProcessBuilder.class.getMethod("startPipeline", List.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Process> startNative(List<ProcessBuilder> builders) throws IOException {
+        try {
+            return (List<Process>) START_PIPELINE.invoke(null, builders);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private List<Process> startCopying(List<ProcessBuilder> builders) throws IOException {
+        List<Process> started = new ArrayList<>(builders.size());
+        try {
+            for (ProcessBuilder builder : builders) {
+                Process process = builder.start();
+                if (!started.isEmpty()) {
+                    copiers.add(startCopier(started.get(started.size() - 1).getInputStream(), process.getOutputStream()));
+                }
+                started.add(process);
+            }
+        } catch (IOException e) {
+            started.forEach(Process::destroy);
+            throw e;
+        }
+        return started;
+    }
+
+    private static Future<?> startCopier(InputStream in, OutputStream out) {
+        return PumperExecutor.get().submit(() -> {
+            BufferPool pool = BufferPool.getInstance();
+            byte[] buffer = pool.acquireBytes();
+            try (InputStream source = in; OutputStream target = out) {
+                int count;
+                while ((count = source.read(buffer)) >= 0) {
+                    target.write(buffer, 0, count);
+                }
+            } catch (IOException e) {
+                // the next stage exited without reading all input
+                LOGGER.debug("Pipeline copy stopped", e);
+            } finally {
+                pool.release(buffer);
+            }
+        });
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Serves all asynchronously executed processes from one daemon thread: it reads only the bytes already
+ * available in the process pipes, so it never blocks on a single process, detects exits and timeouts,
+ * and completes the results on the executor of the execution options. Output lines are passed to the consumers
+ * of the options on that executor as well, in order; the pipes of a process whose consumers fall
+ * {@link #MAX_PENDING_LINES} lines behind are not read until they catch up, timeouts are enforced meanwhile.
+ * The thread blocks while no process is registered and polls less often while the registered ones stay silent.
+ */
+class ProcessPoller implements Runnable {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(ProcessPoller.class);
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long IDLE_AFTER_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int READ_BUDGET = 64 * 1024;
+    static final int MAX_PENDING_LINES = 1024;
+
+    private static final ProcessPoller poller = new ProcessPoller();
+
+    private final BlockingQueue<Task> incoming = new LinkedBlockingQueue<>();
+    private final List<Task> active = new ArrayList<>();
+    private volatile Thread thread;
+
+    static ProcessPoller getInstance() {
+        return poller;
+    }
+
+    void register(List<String> command, Process process, ExecOptions options, ProcessExecution execution) {
+        Task task = new Task(command, process, options, execution);
+        execution.markStarted();
+        incoming.add(task);
+        Thread current = thread;
+        if (current == null) {
+            current = start();
+        }
+        LockSupport.unpark(current);
+    }
+
+    /**
+     * Makes the poller check the processes without waiting for the current park to elapse, e.g. after a kill request.
+     */
+    void wakeUp() {
+        Thread current = thread;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    private synchronized Thread start() {
+        if (thread == null) {
+            Thread started = new Thread(this, "gmp-process-poller");
+            started.setDaemon(true);
+            started.start();
+            thread = started;
+        }
+        return thread;
+    }
+
+    @Override
+    public void run() {
+        long park = MIN_PARK_NANOS;
+        long idleSince = System.nanoTime();
+        while (true) {
+            try {
+                boolean progress = false;
+                if (active.isEmpty()) {
+                    active.add(incoming.take());
+                    progress = true;
+                }
+                progress |= incoming.drainTo(active) > 0;
+                Iterator<Task> tasks = active.iterator();
+                while (tasks.hasNext()) {
+                    Task task = tasks.next();
+                    try {
+                        progress |= task.poll();
+                    } catch (IOException | RuntimeException e) {
+                        task.fail(e);
+                    }
+                    if (task.done) {
+                        tasks.remove();
+                    }
+                }
+                long now = System.nanoTime();
+                if (progress) {
+                    // output read, a process finished or a new one registered
+                    park = MIN_PARK_NANOS;
+                    idleSince = now;
+                } else if (!active.isEmpty()) {
+                    // processes silent for a while are checked less often, but never past the nearest timeout
+                    long maxPark = now - idleSince >= IDLE_AFTER_NANOS ? IDLE_PARK_NANOS : MAX_PARK_NANOS;
+                    LockSupport.parkNanos(this, Math.max(MIN_PARK_NANOS, Math.min(park, untilTimeout(now))));
+                    park = Math.min(park * 2, maxPark);
+                }
+            } catch (InterruptedException e) {
+                LOGGER.error(OSRunner.INTERRUPTED, e);
+            } catch (Throwable e) {
+                LOGGER.error("Process poller error: ", e);
+            }
+        }
+    }
+
+    /**
+     * @return nanoseconds left until the first active process times out
+     */
+    private long untilTimeout(long now) {
+        long remaining = Long.MAX_VALUE;
+        for (Task task : active) {
+            remaining = Math.min(remaining, task.options.getTimeoutNanos() - (now - task.started));
+        }
+        return remaining;
+    }
+
+    private static class Task {
+        private final List<String> command;
+        private final Process process;
+        private final ExecOptions options;
+        private final long started = System.nanoTime();
+        private final ProcessExecution future;
+        private final OutputCapture capture;
+        private final LineDispatcher dispatcher;
+        private final Consumer<String> stdoutSink;
+        private final Consumer<String> stderrSink;
+        private final LineDecoder stdoutDecoder = new LineDecoder(Charset.defaultCharset(), BufferPool.getInstance());
+        private final LineDecoder stderrDecoder = new LineDecoder(Charset.defaultCharset(), BufferPool.getInstance());
+        private boolean done;
+
+        Task(List<String> command, Process process, ExecOptions options, ProcessExecution future) {
+            this.future = future;
+            this.command = command;
+            this.process = process;
+            this.options = options;
+            this.capture = new OutputCapture(options);
+            this.dispatcher = new LineDispatcher(options.getExecutor());
+            this.stdoutSink = sink(capture.getStdoutCapture(), options.getStdoutConsumer());
+            this.stderrSink = sink(capture.getStderrCapture(), options.getStderrConsumer());
+        }
+
+        /**
+         * Captures a line on the poller thread and hands it to the consumer through the dispatcher,
+         * so a slow consumer never delays the other processes.
+         */
+        private Consumer<String> sink(Consumer<String> capture, Consumer<String> consumer) {
+            if (consumer == null) {
+                return capture;
+            }
+            return line -> {
+                capture.accept(line);
+                dispatcher.execute(() -> {
+                    if (dispatcher.getFailure() == null) {
+                        consumer.accept(line);
+                    }
+                });
+            };
+        }
+
+        /**
+         * @return true if any output was read or the task finished
+         */
+        boolean poll() throws IOException {
+            if (future.isDone() || future.isKillRequested()) {
+                ProcessKiller.terminate(process, options.getGracePeriodNanos());
+                if (future.isDone()) {
+                    release();
+                } else {
+                    complete(null, Termination.KILLED);
+                }
+                return true;
+            }
+            Throwable consumerFailure = dispatcher.getFailure();
+            if (consumerFailure != null) {
+                fail(consumerFailure);
+                return true;
+            }
+            boolean progress = false;
+            if (dispatcher.getPending() < MAX_PENDING_LINES) {
+                progress = pump(process.getInputStream(), stdoutDecoder, stdoutSink, READ_BUDGET) > 0;
+                progress |= pump(process.getErrorStream(), stderrDecoder, stderrSink, READ_BUDGET) > 0;
+            }
+            if (!process.isAlive()) {
+                // the pipes may still hold output written right before the exit
+                pump(process.getInputStream(), stdoutDecoder, stdoutSink, Integer.MAX_VALUE);
+                pump(process.getErrorStream(), stderrDecoder, stderrSink, Integer.MAX_VALUE);
+                complete(process.exitValue(), Termination.EXITED);
+                return true;
+            }
+            if (System.nanoTime() - started >= options.getTimeoutNanos()) {
+                ProcessKiller.terminate(process, options.getGracePeriodNanos());
+                complete(null, Termination.TIMED_OUT);
+                return true;
+            }
+            return progress;
+        }
+
+        private int pump(InputStream in, LineDecoder decoder, Consumer<String> sink, int budget) throws IOException {
+            int total = 0;
+            int available;
+            while (total < budget && (available = in.available()) > 0) {
+                int count = decoder.read(in, available, line -> {
+                    OSRunner.LOGGER.info(line);
+                    sink.accept(line);
+                });
+                if (count < 0) {
+                    break;
+                }
+                total += count;
+            }
+            return total;
+        }
+
+        private void complete(Integer exitCode, Termination termination) {
+            stdoutDecoder.finish(stdoutSink);
+            stderrDecoder.finish(stderrSink);
+            release();
+            Metrics metrics = MetricsRegistry.getMetrics();
+            if (metrics.isEnabled()) {
+                metrics.processExit(OS.name(command), exitCode, termination == Termination.TIMED_OUT, System.nanoTime() - started);
+            }
+            ProcessResult result = capture.toResult(termination, exitCode);
+            // queued behind the lines, so the consumers have seen every line when the result completes
+            dispatcher.execute(() -> {
+                Throwable consumerFailure = dispatcher.getFailure();
+                if (consumerFailure == null) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(consumerFailure);
+                }
+            });
+        }
+
+        void fail(Throwable e) {
+            ProcessKiller.terminate(process, 0);
+            release();
+            options.getExecutor().execute(() -> future.completeExceptionally(e));
+        }
+
+        private void release() {
+            done = true;
+            stdoutDecoder.release();
+            stderrDecoder.release();
+            closeQuietly(process.getInputStream());
+            closeQuietly(process.getErrorStream());
+        }
+
+        private static void closeQuietly(InputStream in) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close process stream", e);
+            }
+        }
+    }
+
+    /**
+     * Runs the submitted actions of one process on the executor one at a time and in order,
+     * the first failure of an action is kept for the poller.
+     */
+    static class LineDispatcher implements Runnable {
+        private final Executor executor;
+        private final Queue<Runnable> actions = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile Throwable failure;
+
+        LineDispatcher(Executor executor) {
+            this.executor = executor;
+        }
+
+        void execute(Runnable action) {
+            actions.add(action);
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * @return number of actions not finished yet
+         */
+        int getPending() {
+            return pending.get();
+        }
+
+        Throwable getFailure() {
+            return failure;
+        }
+
+        @Override
+        public void run() {
+            do {
+                Runnable action = actions.poll();
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            } while (pending.decrementAndGet() > 0);
+        }
+    }
+}
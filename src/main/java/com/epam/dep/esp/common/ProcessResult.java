@@ -0,0 +1,125 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exit code and captured output of a finished command.
+ */
+public class ProcessResult {
+    private final Integer exitCode;
+    private final List<String> stdout;
+    private final List<String> stderr;
+    private final long droppedStdout;
+    private final long droppedStderr;
+    private final List<OutputLine> lines;
+    private final Termination termination;
+
+    /**
+     * @param termination   how the process finished
+     * @param exitCode      exit code, null unless the process exited by itself
+     * @param lines         captured lines of both streams in the order they were read
+     * @param droppedStdout number of output lines not captured
+     * @param droppedStderr number of error lines not captured
+     */
+    public ProcessResult(Termination termination, Integer exitCode, List<OutputLine> lines, long droppedStdout, long droppedStderr) {
+        List<String> out = new ArrayList<>();
+        List<String> err = new ArrayList<>();
+        for (OutputLine line : lines) {
+            (line.getStream() == OutputLine.Stream.STDOUT ? out : err).add(line.getText());
+        }
+        this.exitCode = exitCode;
+        this.stdout = Collections.unmodifiableList(out);
+        this.stderr = Collections.unmodifiableList(err);
+        this.droppedStdout = droppedStdout;
+        this.droppedStderr = droppedStderr;
+        this.lines = Collections.unmodifiableList(lines);
+        this.termination = termination;
+    }
+
+    protected ProcessResult(ProcessResult result) {
+        this.exitCode = result.exitCode;
+        this.stdout = result.stdout;
+        this.stderr = result.stderr;
+        this.droppedStdout = result.droppedStdout;
+        this.droppedStderr = result.droppedStderr;
+        this.lines = result.lines;
+        this.termination = result.termination;
+    }
+
+    /**
+     * @return exit code or null if the process did not exit by itself
+     */
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    public Termination getTermination() {
+        return termination;
+    }
+
+    public boolean isTimedOut() {
+        return termination == Termination.TIMED_OUT;
+    }
+
+    public List<String> getStdout() {
+        return stdout;
+    }
+
+    public List<String> getStderr() {
+        return stderr;
+    }
+
+    /**
+     * @return captured lines of both streams in the order they were read, empty if the result was not captured
+     * by {@link OS#execCommandLine(List, ExecOptions)} or {@link OS#execAsync(List, ExecOptions)}
+     */
+    public List<OutputLine> getLines() {
+        return lines;
+    }
+
+    /**
+     * @return number of output lines dropped by the capture policy
+     */
+    public long getDroppedStdout() {
+        return droppedStdout;
+    }
+
+    /**
+     * @return number of error lines dropped by the capture policy
+     */
+    public long getDroppedStderr() {
+        return droppedStderr;
+    }
+
+    /**
+     * @return error lines followed by output lines, the way {@link OS#execCommandLine(List, List, String, int)} reports them
+     */
+    public List<String> getOut() {
+        List<String> out = new ArrayList<>(stderr.size() + stdout.size());
+        out.addAll(stderr);
+        out.addAll(stdout);
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessResult{termination=" + termination + ", exitCode=" + exitCode + ", stdout=" + stdout.size() + " lines, stderr=" + stderr.size() + " lines}";
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the number of processes started by {@link OS} at the same time, globally and per key (the executable name).
+ * Commands over the limits wait in a queue ordered by priority and then by arrival.
+ * <p>
+ * Existing callers opt in with system properties, the default scheduler is created if any of them is set:
+ * <pre>
+ * -Dgmp.process.maxConcurrent=8 -Dgmp.process.maxConcurrentPerCommand=4 -Dgmp.process.maxQueued=1000 -Dgmp.process.queueTimeoutMillis=60000
+ * </pre>
+ * or set one with {@link #setDefault(ProcessScheduler)}.
+ */
+public class ProcessScheduler {
+    public static final String MAX_CONCURRENT_PROPERTY = "gmp.process.maxConcurrent";
+    public static final String MAX_CONCURRENT_PER_COMMAND_PROPERTY = "gmp.process.maxConcurrentPerCommand";
+    public static final String MAX_QUEUED_PROPERTY = "gmp.process.maxQueued";
+    public static final String QUEUE_TIMEOUT_PROPERTY = "gmp.process.queueTimeoutMillis";
+    static final String QUEUE_FULL = "queueFull";
+    static final String TIMEOUT = "timeout";
+
+    private static volatile ProcessScheduler defaultScheduler = fromSystemProperties();
+
+    private final int maxConcurrent;
+    private final int maxConcurrentPerKey;
+    private final Map<String, Integer> keyLimits;
+    private final int maxQueued;
+    private final long queueTimeoutNanos;
+
+    private final TreeSet<Waiter> queue = new TreeSet<>(Comparator.comparingInt((Waiter waiter) -> -waiter.priority)
+            .thenComparingLong(waiter -> waiter.sequence));
+    private final Map<String, Integer> runningPerKey = new HashMap<>();
+    private int running;
+    private long sequence;
+    private long rejected;
+
+    private ProcessScheduler(Builder builder) {
+        this.maxConcurrent = builder.maxConcurrent;
+        this.maxConcurrentPerKey = builder.maxConcurrentPerKey;
+        this.keyLimits = new HashMap<>(builder.keyLimits);
+        this.maxQueued = builder.maxQueued;
+        this.queueTimeoutNanos = builder.queueTimeoutNanos;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return scheduler used by {@link OS} or null if the number of processes is not limited
+     */
+    public static ProcessScheduler getDefault() {
+        return defaultScheduler;
+    }
+
+    /**
+     * @param scheduler scheduler used by {@link OS} or null to start processes without limits
+     */
+    public static void setDefault(ProcessScheduler scheduler) {
+        defaultScheduler = scheduler;
+    }
+
+    static ProcessScheduler fromSystemProperties() {
+        Integer maxConcurrent = Integer.getInteger(MAX_CONCURRENT_PROPERTY);
+        Integer maxConcurrentPerCommand = Integer.getInteger(MAX_CONCURRENT_PER_COMMAND_PROPERTY);
+        Integer maxQueued = Integer.getInteger(MAX_QUEUED_PROPERTY);
+        Long queueTimeout = Long.getLong(QUEUE_TIMEOUT_PROPERTY);
+        if (maxConcurrent == null && maxConcurrentPerCommand == null && maxQueued == null && queueTimeout == null) {
+            return null;
+        }
+        Builder builder = builder();
+        if (maxConcurrent != null) builder.maxConcurrent(maxConcurrent);
+        if (maxConcurrentPerCommand != null) builder.maxConcurrentPerKey(maxConcurrentPerCommand);
+        if (maxQueued != null) builder.maxQueued(maxQueued);
+        if (queueTimeout != null) builder.queueTimeout(queueTimeout, TimeUnit.MILLISECONDS);
+        return builder.build();
+    }
+
+    /**
+     * Waits for a permit to start a process.
+     *
+     * @param key      limit key, usually the executable name
+     * @param priority higher priorities leave the queue first
+     * @return permit to close when the process finished
+     * @throws InterruptedException       if interrupted while queued
+     * @throws RejectedExecutionException if the queue is full or the permit is not granted within the queue timeout
+     */
+    public Permit acquire(String key, int priority) throws InterruptedException {
+        Waiter waiter = enqueue(key, priority);
+        try {
+            return waiter.future.get(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (remove(waiter)) {
+                throw reject(key, TIMEOUT);
+            }
+            // granted concurrently
+            return waiter.future.join();
+        } catch (InterruptedException e) {
+            if (!remove(waiter)) {
+                waiter.future.join().close();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw (RejectedExecutionException) e.getCause();
+        }
+    }
+
+    /**
+     * Queues for a permit without blocking the caller.
+     *
+     * @param key      limit key, usually the executable name
+     * @param priority higher priorities leave the queue first
+     * @return permit completed by the thread releasing the previous one, or failed with
+     * {@link RejectedExecutionException} if the queue is full or the queue timeout expires
+     */
+    public CompletableFuture<Permit> acquireAsync(String key, int priority) {
+        Waiter waiter;
+        try {
+            waiter = enqueue(key, priority);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<Permit> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        if (!waiter.future.isDone() && queueTimeoutNanos != Long.MAX_VALUE) {
+            ProcessTimer.schedule(() -> {
+                if (remove(waiter)) {
+                    waiter.future.completeExceptionally(reject(key, TIMEOUT));
+                }
+            }, queueTimeoutNanos);
+        }
+        return waiter.future;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    private Waiter enqueue(String key, int priority) {
+        List<Waiter> granted;
+        boolean full = false;
+        Waiter waiter = new Waiter(key, priority, sequence());
+        synchronized (this) {
+            queue.add(waiter);
+            granted = dispatch();
+            if (queue.size() > maxQueued && queue.remove(waiter)) {
+                rejected++;
+                full = true;
+            }
+        }
+        grant(granted);
+        if (full) {
+            Metrics metrics = MetricsRegistry.getMetrics();
+            if (metrics.isEnabled()) {
+                metrics.processRejected(key, QUEUE_FULL);
+            }
+            throw new RejectedExecutionException("Process queue is full: " + key);
+        }
+        return waiter;
+    }
+
+    private synchronized long sequence() {
+        return sequence++;
+    }
+
+    private synchronized boolean remove(Waiter waiter) {
+        return queue.remove(waiter);
+    }
+
+    private RejectedExecutionException reject(String key, String reason) {
+        synchronized (this) {
+            rejected++;
+        }
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.processRejected(key, reason);
+            metrics.processSchedulerStats(getQueued(), getRunning());
+        }
+        return new RejectedExecutionException("Process queue timeout: " + key);
+    }
+
+    private void release(String key) {
+        List<Waiter> granted;
+        synchronized (this) {
+            running--;
+            runningPerKey.merge(key, -1, (count, delta) -> count + delta == 0 ? null : count + delta);
+            granted = dispatch();
+        }
+        grant(granted);
+    }
+
+    /**
+     * Takes the waiters allowed to run from the queue, a waiter blocked by its key limit doesn't block other keys.
+     */
+    private List<Waiter> dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        Iterator<Waiter> waiters = queue.iterator();
+        while (running < maxConcurrent && waiters.hasNext()) {
+            Waiter waiter = waiters.next();
+            int keyRunning = runningPerKey.getOrDefault(waiter.key, 0);
+            if (keyRunning < keyLimits.getOrDefault(waiter.key, maxConcurrentPerKey)) {
+                waiters.remove();
+                running++;
+                runningPerKey.put(waiter.key, keyRunning + 1);
+                granted.add(waiter);
+            }
+        }
+        return granted;
+    }
+
+    private void grant(List<Waiter> granted) {
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            long now = System.nanoTime();
+            for (Waiter waiter : granted) {
+                metrics.processQueueWait(waiter.key, now - waiter.enqueued);
+            }
+            metrics.processSchedulerStats(getQueued(), getRunning());
+        }
+        for (Waiter waiter : granted) {
+            waiter.future.complete(new Permit(waiter.key));
+        }
+    }
+
+    /**
+     * Allows one process to run, closing it lets the next queued command start.
+     */
+    public class Permit implements AutoCloseable {
+        private final String key;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Permit(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(key);
+            }
+        }
+    }
+
+    private static class Waiter {
+        private final String key;
+        private final int priority;
+        private final long sequence;
+        private final long enqueued = System.nanoTime();
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        Waiter(String key, int priority, long sequence) {
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    public static class Builder {
+        private int maxConcurrent = Runtime.getRuntime().availableProcessors();
+        private int maxConcurrentPerKey = Integer.MAX_VALUE;
+        private final Map<String, Integer> keyLimits = new HashMap<>();
+        private int maxQueued = Integer.MAX_VALUE;
+        private long queueTimeoutNanos = Long.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxConcurrent max number of running processes, the number of processors by default
+         * @return this builder
+         */
+        public Builder maxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentPerKey max number of running processes of a key without its own limit
+         * @return this builder
+         */
+        public Builder maxConcurrentPerKey(int maxConcurrentPerKey) {
+            this.maxConcurrentPerKey = maxConcurrentPerKey;
+            return this;
+        }
+
+        /**
+         * @param key   limit key, usually the executable name such as "git"
+         * @param limit max number of running processes of the key
+         * @return this builder
+         */
+        public Builder limit(String key, int limit) {
+            keyLimits.put(key, limit);
+            return this;
+        }
+
+        /**
+         * @param maxQueued max number of waiting commands, further commands are rejected
+         * @return this builder
+         */
+        public Builder maxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+            return this;
+        }
+
+        /**
+         * @param timeout max time a command waits in the queue, unlimited by default
+         * @param unit    unit of the timeout
+         * @return this builder
+         */
+        public Builder queueTimeout(long timeout, TimeUnit unit) {
+            this.queueTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        public ProcessScheduler build() {
+            if (maxConcurrent < 1 || maxConcurrentPerKey < 1 || keyLimits.values().stream().anyMatch(limit -> limit < 1)) {
+                throw new IllegalArgumentException("Concurrency limits must be positive");
+            }
+            if (maxQueued < 0 || queueTimeoutNanos < 0) {
+                throw new IllegalArgumentException("Queue limits must not be negative");
+            }
+            return new ProcessScheduler(this);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the blocking readers of process streams. This Java 8 variant reuses up to
+ * {@value #MAX_THREADS_PROPERTY} (256 by default) daemon threads, a reader beyond the bound gets a thread of its own,
+ * so readers never wait for each other. The Java 21 variant in META-INF/versions/21 runs them on virtual threads.
+ */
+final class PumperExecutor {
+    static final String MAX_THREADS_PROPERTY = "gmp.process.pumperThreads";
+    private static final ThreadFactory FACTORY = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gmp-pumper-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+    private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(0, Integer.getInteger(MAX_THREADS_PROPERTY, 256),
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(), FACTORY,
+            // a queued reader could deadlock a process blocked on a full pipe
+            (runnable, executor) -> FACTORY.newThread(runnable).start());
+
+    private PumperExecutor() {
+    }
+
+    static ExecutorService get() {
+        return EXECUTOR;
+    }
+}
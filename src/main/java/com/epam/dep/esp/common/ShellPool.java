@@ -0,0 +1,480 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Runs short commands in long-lived shells instead of spawning a process with a pair of pumper threads per command.
+ * Each command is written to the stdin of an idle shell followed by marker lines carrying its exit status,
+ * the output is read back up to the markers. A shell is health-checked when it was idle for a while and replaced
+ * after a number of commands. Commands are spawned the usual way when the pool is exhausted or closed,
+ * no shell can be started, or the platform has no POSIX shell.
+ * <p>
+ * Each command replaces a subshell of the pooled shell, its stdin is /dev/null. The working folder and environment
+ * variables of the options are applied in the subshell, so they don't leak to later commands, and shell builtins such as
+ * {@code cd} or {@code exit} can't change or stop the pooled shell, they fail as unknown commands instead.
+ * <pre>
+ * try (ShellPool pool = ShellPool.builder().maxShells(4).build()) {
+ *     ProcessResult head = pool.exec(Arrays.asList("git", "rev-parse", "HEAD"), ExecOptions.defaults());
+ * }
+ * </pre>
+ */
+public class ShellPool implements AutoCloseable {
+    protected static final Logger LOGGER = LoggerFactory.getLogger(ShellPool.class);
+    private static final Pattern VARIABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final long HEALTH_CHECK_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final OS os;
+    private final List<String> shell;
+    private final int maxShells;
+    private final int maxCommandsPerShell;
+    private final long healthCheckAfterNanos;
+
+    private final BlockingDeque<Shell> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger shells = new AtomicInteger();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private volatile boolean closed;
+
+    private ShellPool(Builder builder) {
+        this.os = builder.os;
+        this.shell = builder.shell;
+        this.maxShells = builder.maxShells;
+        this.maxCommandsPerShell = builder.maxCommandsPerShell;
+        this.healthCheckAfterNanos = builder.healthCheckAfterNanos;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Executes the command in a pooled shell or spawns it if no shell is available.
+     *
+     * @param command command line
+     * @param options execution options, the capture policy and consumers apply as for
+     *                {@link OS#execCommandLine(List, ExecOptions)}
+     * @return exit code, null on timeout, and the retained output
+     * @throws IOException if the command can't be started
+     * @see OS#execCommandLine(List, ExecOptions)
+     */
+    public ProcessResult exec(List<String> command, ExecOptions options) throws IOException {
+        if (command == null || command.isEmpty()) {
+            throw new IllegalArgumentException("Command is required");
+        }
+        String script = script(command, options);
+        Shell pooled = closed || os == OS.win ? null : borrow();
+        if (pooled == null) {
+            fallbacks.incrementAndGet();
+            return os.execCommandLine(command, options);
+        }
+        OutputCapture capture = new OutputCapture(options);
+        Integer exitCode;
+        long started;
+        try {
+            // released before a fallback spawns the command, which acquires its own permit
+            ProcessScheduler.Permit permit = OS.acquire(command, options.getPriority());
+            try {
+                started = System.nanoTime();
+                exitCode = pooled.run(script, capture.getStdoutSink(), capture.getStderrSink(), options.getTimeoutNanos());
+            } finally {
+                OS.release(permit);
+            }
+        } catch (ShellUnavailableException e) {
+            LOGGER.debug("Shell unavailable, spawning the command", e);
+            discard(pooled);
+            fallbacks.incrementAndGet();
+            return os.execCommandLine(command, options);
+        } catch (IOException | RuntimeException e) {
+            discard(pooled);
+            throw e;
+        }
+        giveBack(pooled);
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.processExit(OS.name(command), exitCode, exitCode == null, System.nanoTime() - started);
+        }
+        return capture.toResult(exitCode);
+    }
+
+    /**
+     * @return number of started shells
+     */
+    public int getShells() {
+        return shells.get();
+    }
+
+    /**
+     * @return number of commands spawned because no shell was available
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    /**
+     * Stops the idle shells, shells running a command stop when it finishes. Later commands are spawned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Shell shell;
+        while ((shell = idle.pollFirst()) != null) {
+            discard(shell);
+        }
+    }
+
+    private Shell borrow() {
+        Shell pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (pooled.isHealthy()) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        if (shells.incrementAndGet() > maxShells) {
+            shells.decrementAndGet();
+            return null;
+        }
+        try {
+            return new Shell();
+        } catch (IOException e) {
+            shells.decrementAndGet();
+            LOGGER.warn("Unable to start shell {}", shell, e);
+            return null;
+        }
+    }
+
+    private void giveBack(Shell pooled) {
+        if (pooled.broken || pooled.commands >= maxCommandsPerShell || closed) {
+            discard(pooled);
+        } else {
+            // the most recently used shell is reused first, so surplus shells stay idle and get recycled
+            idle.offerFirst(pooled);
+        }
+    }
+
+    private void discard(Shell pooled) {
+        shells.decrementAndGet();
+        pooled.close();
+    }
+
+    static String script(List<String> command, ExecOptions options) {
+        StringBuilder script = new StringBuilder();
+        Map<String, String> envVars = options.getEnvVars();
+        script.append("( ");
+        if (options.getHomeFolder() != null) {
+            script.append("cd ").append(quote(options.getHomeFolder())).append(" && ");
+        }
+        if (envVars != null) {
+            for (Map.Entry<String, String> variable : envVars.entrySet()) {
+                if (!VARIABLE_NAME.matcher(variable.getKey()).matches()) {
+                    throw new IllegalArgumentException("Invalid environment variable name: " + variable.getKey());
+                }
+                script.append("export ").append(variable.getKey()).append('=').append(quote(variable.getValue())).append(" && ");
+            }
+        }
+        // exec runs only programs, so the command can't change the pooled shell
+        script.append("exec ");
+        for (String argument : command) {
+            script.append(quote(argument)).append(' ');
+        }
+        return script.append(") </dev/null").toString();
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * Thrown if the command could not be sent to the shell, so it did not run.
+     */
+    private static class ShellUnavailableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ShellUnavailableException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    private class Shell {
+        private final Process process;
+        private final Writer stdin;
+        private final InputStream stdout;
+        private final LineDecoder decoder = new LineDecoder(Charset.defaultCharset(), BufferPool.getInstance());
+        private final String markerPrefix = "__gmp_" + UUID.randomUUID().toString().replace("-", "") + "_";
+        private final Semaphore errorDone = new Semaphore(0);
+        private volatile String errorMarker;
+        private volatile Consumer<String> errorSink;
+        private int commands;
+        private long lastUsed = System.nanoTime();
+        private boolean broken;
+        private volatile boolean timedOut;
+
+        Shell() throws IOException {
+            process = new ProcessBuilder(shell).start();
+            stdin = new OutputStreamWriter(process.getOutputStream(), Charset.defaultCharset());
+            stdout = process.getInputStream();
+            Thread errorReader = new Thread(this::readErrors, "gmp-shell-stderr");
+            errorReader.setDaemon(true);
+            errorReader.start();
+        }
+
+        boolean isHealthy() {
+            if (!process.isAlive()) {
+                return false;
+            }
+            if (System.nanoTime() - lastUsed < healthCheckAfterNanos) {
+                return true;
+            }
+            try {
+                Integer exitCode = run("true", line -> { }, line -> { }, HEALTH_CHECK_TIMEOUT_NANOS);
+                return !broken && exitCode != null && exitCode == 0;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * @return exit code or null on timeout
+         * @throws ShellUnavailableException if the command could not be sent, so it did not run
+         * @throws IOException               if the shell died while running the command
+         */
+        Integer run(String script, Consumer<String> out, Consumer<String> err, long timeoutNanos) throws IOException {
+            String marker = markerPrefix + commands++ + ":";
+            errorMarker = marker;
+            errorSink = err;
+            try {
+                stdin.write(script + "\n__gmp_rc=$?; printf '%s%d\\n' '" + marker + "' $__gmp_rc; printf '%s\\n' '" + marker + "' >&2\n");
+                stdin.flush();
+            } catch (IOException e) {
+                broken = true;
+                throw new ShellUnavailableException(e);
+            }
+            long started = System.nanoTime();
+            timedOut = false;
+            ScheduledFuture<?> deadline = timeoutNanos == Long.MAX_VALUE ? null : ProcessTimer.schedule(() -> {
+                timedOut = true;
+                terminate();
+            }, timeoutNanos);
+            MarkerSink sink = new MarkerSink(marker, out);
+            try {
+                while (!sink.found) {
+                    if (decoder.read(stdout, Integer.MAX_VALUE, sink) < 0) {
+                        broken = true;
+                        if (timedOut) {
+                            return null;
+                        }
+                        throw new IOException("Shell exited while running the command, exit code " + exitCode());
+                    }
+                }
+                long remaining = timeoutNanos - (System.nanoTime() - started);
+                if (!errorDone.tryAcquire(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                    broken = true;
+                    return null;
+                }
+                return sink.exitCode;
+            } catch (InterruptedException e) {
+                broken = true;
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+                lastUsed = System.nanoTime();
+            }
+        }
+
+        private Integer exitCode() {
+            try {
+                return process.waitFor(1, TimeUnit.SECONDS) ? process.exitValue() : null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        private void readErrors() {
+            LineDecoder errors = new LineDecoder(Charset.defaultCharset(), BufferPool.getInstance());
+            InputStream stderr = process.getErrorStream();
+            Consumer<String> lines = line -> {
+                String marker = errorMarker;
+                int index = marker == null ? -1 : line.lastIndexOf(marker);
+                Consumer<String> sink = errorSink;
+                if (index < 0) {
+                    if (sink != null) {
+                        sink.accept(line);
+                    }
+                    return;
+                }
+                if (index > 0 && sink != null) {
+                    sink.accept(line.substring(0, index));
+                }
+                errorDone.release();
+            };
+            try {
+                while (errors.read(stderr, Integer.MAX_VALUE, lines) >= 0) {
+                    // lines are dispatched to the current command
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Shell error stream closed", e);
+            } finally {
+                errors.release();
+            }
+        }
+
+        void close() {
+            try {
+                stdin.write("exit\n");
+                stdin.close();
+            } catch (IOException e) {
+                LOGGER.debug("Shell already stopped", e);
+            }
+            if (broken) {
+                terminate();
+            } else {
+                process.destroy();
+            }
+            decoder.release();
+        }
+
+        /**
+         * Kills the shell together with the command it runs.
+         */
+        private void terminate() {
+            ProcessKiller.terminate(process, 0);
+        }
+    }
+
+    /**
+     * Passes output lines to the command sink until the marker line with the exit status.
+     */
+    private static class MarkerSink implements Consumer<String> {
+        private final String marker;
+        private final Consumer<String> out;
+        private boolean found;
+        private Integer exitCode;
+
+        MarkerSink(String marker, Consumer<String> out) {
+            this.marker = marker;
+            this.out = out;
+        }
+
+        @Override
+        public void accept(String line) {
+            int index = line.lastIndexOf(marker);
+            if (index < 0) {
+                out.accept(line);
+                return;
+            }
+            // output without a trailing line break precedes the marker
+            if (index > 0) {
+                out.accept(line.substring(0, index));
+            }
+            exitCode = Integer.valueOf(line.substring(index + marker.length()));
+            found = true;
+        }
+    }
+
+    public static class Builder {
+        private OS os = OS.getOs();
+        private List<String> shell = Arrays.asList("/bin/bash", "--noprofile", "--norc");
+        private int maxShells = Runtime.getRuntime().availableProcessors();
+        private int maxCommandsPerShell = 1000;
+        private long healthCheckAfterNanos = TimeUnit.SECONDS.toNanos(30);
+
+        private Builder() {
+        }
+
+        /**
+         * @param shell command line of a POSIX shell reading commands from stdin, bash by default
+         * @return this builder
+         */
+        public Builder shell(String... shell) {
+            this.shell = Arrays.asList(shell);
+            return this;
+        }
+
+        /**
+         * @param maxShells max number of shells, commands are spawned while all of them are busy
+         * @return this builder
+         */
+        public Builder maxShells(int maxShells) {
+            this.maxShells = maxShells;
+            return this;
+        }
+
+        /**
+         * @param maxCommandsPerShell number of commands after which a shell is replaced, 1000 by default
+         * @return this builder
+         */
+        public Builder maxCommandsPerShell(int maxCommandsPerShell) {
+            this.maxCommandsPerShell = maxCommandsPerShell;
+            return this;
+        }
+
+        /**
+         * @param idle idle time after which a shell is checked before reuse, 30 seconds by default
+         * @param unit unit of the idle time
+         * @return this builder
+         */
+        public Builder healthCheckAfter(long idle, TimeUnit unit) {
+            this.healthCheckAfterNanos = unit.toNanos(idle);
+            return this;
+        }
+
+        /**
+         * @param os operating system spawning the commands when no shell is available
+         * @return this builder
+         */
+        public Builder os(OS os) {
+            this.os = os;
+            return this;
+        }
+
+        public ShellPool build() {
+            if (maxShells < 1 || maxCommandsPerShell < 1) {
+                throw new IllegalArgumentException("Pool limits must be positive");
+            }
+            if (shell == null || shell.isEmpty() || os == null) {
+                throw new IllegalArgumentException("Shell and OS are required");
+            }
+            return new ShellPool(this);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+/**
+ * How a process finished.
+ */
+public enum Termination {
+    /**
+     * The process exited by itself.
+     */
+    EXITED,
+    /**
+     * The process was terminated at the timeout.
+     */
+    TIMED_OUT,
+    /**
+     * The process was terminated on request: the execution was cancelled or killed, or the waiting thread was interrupted.
+     */
+    KILLED
+}
@@ -0,0 +1,76 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exit code and output size of a command whose output was transferred as raw bytes.
+ */
+public class TransferResult {
+    private final Termination termination;
+    private final Integer exitCode;
+    private final long bytes;
+    private final List<String> stderr;
+
+    /**
+     * @param termination how the process finished
+     * @param exitCode    exit code, null unless the process exited by itself
+     * @param bytes       number of output bytes transferred
+     * @param stderr      captured error lines
+     */
+    public TransferResult(Termination termination, Integer exitCode, long bytes, List<String> stderr) {
+        this.termination = termination;
+        this.exitCode = exitCode;
+        this.bytes = bytes;
+        this.stderr = Collections.unmodifiableList(stderr);
+    }
+
+    /**
+     * @return exit code or null if the process did not exit by itself
+     */
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    public Termination getTermination() {
+        return termination;
+    }
+
+    public boolean isTimedOut() {
+        return termination == Termination.TIMED_OUT;
+    }
+
+    /**
+     * @return number of output bytes transferred
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return error lines kept by the capture policy of the execution
+     */
+    public List<String> getStderr() {
+        return stderr;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferResult{termination=" + termination + ", exitCode=" + exitCode + ", bytes=" + bytes + ", stderr=" + stderr.size() + " lines}";
+    }
+}
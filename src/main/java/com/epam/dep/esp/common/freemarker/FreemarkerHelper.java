@@ -15,6 +15,8 @@
 
 package com.epam.dep.esp.common.freemarker;
 
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
@@ -46,9 +48,14 @@ public class FreemarkerHelper {
      * @throws TemplateException
      */
     public String processTemplate(String templateName, Map<String, Object> variables) throws IOException, TemplateException {
+        long started = System.nanoTime();
         Template template = config.getTemplate(templateName);
         StringWriter out = new StringWriter();
         template.process(variables, out);
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.templateRender(templateName, System.nanoTime() - started);
+        }
         return out.toString();
     }
 }
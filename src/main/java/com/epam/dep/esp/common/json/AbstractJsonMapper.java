@@ -16,24 +16,349 @@
 package com.epam.dep.esp.common.json;
 
 import com.epam.dep.esp.common.AbstractObjectMapper;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.epam.dep.esp.common.PooledStringWriter;
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedOutputStream;
+
+import java.io.FilterOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+public abstract class AbstractJsonMapper extends AbstractObjectMapper<String, Object> implements JsonReader {
+    private static final String NULL = "null";
+    private final String name = getClass().getSimpleName();
 
-public abstract class AbstractJsonMapper extends AbstractObjectMapper<String, Object> {
     protected abstract ObjectMapper getObjectMapper();
 
+    /**
+     * Writers are immutable and thread-safe, implementations are expected to return shared instances.
+     *
+     * @param pretty - pretty format if true
+     * @return writer for the given format
+     */
+    protected ObjectWriter getObjectWriter(boolean pretty) {
+        return pretty ? getObjectMapper().writer(new DefaultPrettyPrinter()) : getObjectMapper().writer();
+    }
+
     @Override
     public String map(boolean pretty, boolean printClassName, Object obj) {
         if (obj == null) {
-            return "null";
+            return NULL;
         }
-        try {
-            return (printClassName ? (obj.getClass().getSimpleName() + ":") : "") + (pretty ?
-                    getObjectMapper().writer(new DefaultPrettyPrinter()).writeValueAsString(obj) :
-                    getObjectMapper().writeValueAsString(obj));
-        } catch (JsonProcessingException e) {
+        long started = System.nanoTime();
+        try (PooledStringWriter out = new PooledStringWriter();
+             JsonGenerator generator = getObjectMapper().getFactory().createGenerator(out)) {
+            writeTo(generator, pretty, printClassName, obj);
+            generator.flush();
+            String document = out.toString();
+            record(document.length(), started);
+            return document;
+        } catch (IOException e) {
             return obj.getClass().getName() + "@" + Integer.toHexString(obj.hashCode());
         }
     }
+
+    /**
+     * Writes the object as UTF-8 JSON directly to the stream without building an intermediate String.
+     * The stream is flushed but not closed.
+     *
+     * @param pretty         - pretty format if true
+     * @param printClassName - prefix the document with the simple class name if true
+     * @param obj            - object to map
+     * @param out            - target stream
+     * @throws IOException if the object can't be serialized or the stream can't be written
+     */
+    public void mapTo(boolean pretty, boolean printClassName, Object obj, OutputStream out) throws IOException {
+        if (!MetricsRegistry.getMetrics().isEnabled()) {
+            try (JsonGenerator generator = getObjectMapper().getFactory().createGenerator(out)) {
+                writeTo(generator, pretty, printClassName, obj);
+            }
+            return;
+        }
+        long started = System.nanoTime();
+        CountingOutputStream counting = new CountingOutputStream(out);
+        try (JsonGenerator generator = getObjectMapper().getFactory().createGenerator(counting)) {
+            writeTo(generator, pretty, printClassName, obj);
+        }
+        record(counting.count, started);
+    }
+
+    /**
+     * Writes the object as JSON directly to the writer without building an intermediate String.
+     * The writer is flushed but not closed.
+     *
+     * @param pretty         - pretty format if true
+     * @param printClassName - prefix the document with the simple class name if true
+     * @param obj            - object to map
+     * @param out            - target writer
+     * @throws IOException if the object can't be serialized or the writer can't be written
+     */
+    public void mapTo(boolean pretty, boolean printClassName, Object obj, Writer out) throws IOException {
+        if (!MetricsRegistry.getMetrics().isEnabled()) {
+            try (JsonGenerator generator = getObjectMapper().getFactory().createGenerator(out)) {
+                writeTo(generator, pretty, printClassName, obj);
+            }
+            return;
+        }
+        long started = System.nanoTime();
+        CountingWriter counting = new CountingWriter(out);
+        try (JsonGenerator generator = getObjectMapper().getFactory().createGenerator(counting)) {
+            writeTo(generator, pretty, printClassName, obj);
+        }
+        record(counting.count, started);
+    }
+
+    /**
+     * Writes the object as UTF-8 JSON into the buffer starting at its current position.
+     *
+     * @param pretty         - pretty format if true
+     * @param printClassName - prefix the document with the simple class name if true
+     * @param obj            - object to map
+     * @param out            - target buffer, its position is advanced by the number of bytes written
+     * @throws IOException if the object can't be serialized
+     * @throws java.nio.BufferOverflowException if the buffer has not enough space remaining
+     */
+    public void mapTo(boolean pretty, boolean printClassName, Object obj, ByteBuffer out) throws IOException {
+        mapTo(pretty, printClassName, obj, new ByteBufferBackedOutputStream(out));
+    }
+
+    /**
+     * @param obj - object to map
+     * @param out - target stream
+     * @throws IOException if the object can't be serialized or the stream can't be written
+     */
+    public void mapTo(Object obj, OutputStream out) throws IOException {
+        mapTo(false, false, obj, out);
+    }
+
+    /**
+     * @param obj - object to map
+     * @param out - target writer
+     * @throws IOException if the object can't be serialized or the writer can't be written
+     */
+    public void mapTo(Object obj, Writer out) throws IOException {
+        mapTo(false, false, obj, out);
+    }
+
+    /**
+     * @param obj - object to map
+     * @param out - target buffer
+     * @throws IOException if the object can't be serialized
+     */
+    public void mapTo(Object obj, ByteBuffer out) throws IOException {
+        mapTo(false, false, obj, out);
+    }
+
+    /**
+     * Writes records as newline-delimited JSON (one compact document per line) through a single generator.
+     *
+     * @param items - records to map
+     * @param out   - target stream, flushed but not closed
+     * @return number of records written
+     * @throws IOException if a record can't be serialized or the stream can't be written
+     */
+    public long mapAll(Iterator<?> items, OutputStream out) throws IOException {
+        return mapAll(items, out, false);
+    }
+
+    /**
+     * @param items - records to map
+     * @param out   - target stream, flushed but not closed
+     * @return number of records written
+     * @throws IOException if a record can't be serialized or the stream can't be written
+     * @see #mapAll(Iterator, OutputStream)
+     */
+    public long mapAll(Iterable<?> items, OutputStream out) throws IOException {
+        return mapAll(items.iterator(), out, false);
+    }
+
+    /**
+     * @param items - records to map
+     * @param out   - target stream, flushed but not closed
+     * @return number of records written
+     * @throws IOException if a record can't be serialized or the stream can't be written
+     * @see #mapAll(Iterator, OutputStream)
+     */
+    public long mapAll(Stream<?> items, OutputStream out) throws IOException {
+        return mapAll(items.iterator(), out, false);
+    }
+
+    /**
+     * @param items - records to map
+     * @param out   - target stream, flushed but not closed
+     * @param array - write a single JSON array if true, newline-delimited JSON otherwise
+     * @return number of records written
+     * @throws IOException if a record can't be serialized or the stream can't be written
+     */
+    public long mapAll(Iterator<?> items, OutputStream out, boolean array) throws IOException {
+        return new JsonSequenceWriter(getObjectMapper().getFactory(), getObjectWriter(false), array).write(items, out);
+    }
+
+    /**
+     * Serializes chunks of records in parallel on the pool, the output keeps the order of the records.
+     *
+     * @param items     - records to map, consumed on the calling thread
+     * @param out       - target stream, written on the calling thread, flushed but not closed
+     * @param array     - write a single JSON array if true, newline-delimited JSON otherwise
+     * @param pool      - pool to serialize chunks on
+     * @param chunkSize - number of records serialized by one task
+     * @return number of records written
+     * @throws IOException if a record can't be serialized or the stream can't be written
+     */
+    public long mapAll(Iterator<?> items, OutputStream out, boolean array, ForkJoinPool pool, int chunkSize) throws IOException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        return new JsonSequenceWriter(getObjectMapper().getFactory(), getObjectWriter(false), array).write(items, out, pool, chunkSize);
+    }
+
+    @Override
+    public <T> T read(String content, Class<T> type) throws IOException {
+        return getObjectMapper().readValue(content, type);
+    }
+
+    @Override
+    public <T> T read(byte[] content, Class<T> type) throws IOException {
+        return getObjectMapper().readValue(content, type);
+    }
+
+    @Override
+    public <T> T read(InputStream content, Class<T> type) throws IOException {
+        try (JsonParser parser = createParser(content)) {
+            return getObjectMapper().readValue(parser, type);
+        }
+    }
+
+    @Override
+    public <T> T read(Reader content, Class<T> type) throws IOException {
+        try (JsonParser parser = createParser(content)) {
+            return getObjectMapper().readValue(parser, type);
+        }
+    }
+
+    @Override
+    public JsonNode readTree(String content) throws IOException {
+        return getObjectMapper().readTree(content);
+    }
+
+    @Override
+    public JsonNode readTree(byte[] content) throws IOException {
+        return getObjectMapper().readTree(content);
+    }
+
+    @Override
+    public JsonNode readTree(InputStream content) throws IOException {
+        try (JsonParser parser = createParser(content)) {
+            return getObjectMapper().readTree(parser);
+        }
+    }
+
+    @Override
+    public JsonNode readTree(Reader content) throws IOException {
+        try (JsonParser parser = createParser(content)) {
+            return getObjectMapper().readTree(parser);
+        }
+    }
+
+    @Override
+    public <T> MappingIterator<T> readValues(InputStream content, Class<T> type) throws IOException {
+        return getObjectMapper().readerFor(type).readValues(content);
+    }
+
+    @Override
+    public <T> MappingIterator<T> readValues(Reader content, Class<T> type) throws IOException {
+        return getObjectMapper().readerFor(type).readValues(content);
+    }
+
+    private JsonParser createParser(InputStream content) throws IOException {
+        // the caller owns the source
+        return getObjectMapper().getFactory().createParser(content).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    private JsonParser createParser(Reader content) throws IOException {
+        return getObjectMapper().getFactory().createParser(content).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    private void record(long size, long started) {
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.serialization(name, size, System.nanoTime() - started);
+        }
+    }
+
+    private void writeTo(JsonGenerator generator, boolean pretty, boolean printClassName, Object obj) throws IOException {
+        // the caller owns the target, closing the generator must only flush it
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        if (printClassName && obj != null) {
+            generator.writeRaw(obj.getClass().getSimpleName());
+            generator.writeRaw(':');
+        }
+        if (obj == null) {
+            generator.writeRaw(NULL);
+            return;
+        }
+        getObjectWriter(pretty).writeValue(generator, obj);
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static class CountingWriter extends FilterWriter {
+        private long count;
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            out.write(c);
+            count++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            out.write(cbuf, off, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            count += len;
+        }
+    }
 }
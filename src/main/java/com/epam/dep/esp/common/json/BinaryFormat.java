@@ -0,0 +1,47 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+/**
+ * Binary encodings of the JSON data model supported by {@link BinaryMapper}.
+ */
+public enum BinaryFormat {
+    SMILE {
+        @Override
+        JsonFactory createFactory() {
+            return new SmileFactory();
+        }
+    },
+    CBOR {
+        @Override
+        JsonFactory createFactory() {
+            return new CBORFactory();
+        }
+    },
+    MESSAGE_PACK {
+        @Override
+        JsonFactory createFactory() {
+            return new MessagePackFactory();
+        }
+    };
+
+    abstract JsonFactory createFactory();
+}
@@ -0,0 +1,146 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json;
+
+import com.epam.dep.esp.common.AbstractObjectMapper;
+import com.epam.dep.esp.common.json.filter.Redactor;
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Maps objects to one of the {@link BinaryFormat}s. Filtered instances apply the same redaction rules
+ * as {@link FilteredJsonMapper#getInstance()}. Binary documents have no pretty form and no class name prefix,
+ * so the {@code pretty} and {@code printClassName} flags are ignored.
+ */
+public class BinaryMapper extends AbstractObjectMapper<byte[], Object> {
+    private static final Map<BinaryFormat, BinaryMapper> serializers = new EnumMap<>(BinaryFormat.class);
+    private static final Map<BinaryFormat, BinaryMapper> filteredSerializers = new EnumMap<>(BinaryFormat.class);
+
+    static {
+        for (BinaryFormat format : BinaryFormat.values()) {
+            serializers.put(format, new BinaryMapper(format, null));
+            filteredSerializers.put(format, new BinaryMapper(format, FilteredJsonMapper.getInstance().getRedactor()));
+        }
+    }
+
+    private final BinaryFormat format;
+    private final ObjectMapper mapper;
+    private final ObjectWriter writer;
+
+    private BinaryMapper(BinaryFormat format, Redactor redactor) {
+        this.format = format;
+        this.mapper = new ObjectMapper(format.createFactory());
+        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        if (redactor != null) {
+            redactor.configure(mapper);
+        }
+        this.writer = mapper.writer();
+    }
+
+    public static BinaryMapper getInstance(BinaryFormat format) {
+        return serializers.get(format);
+    }
+
+    /**
+     * @param format binary format
+     * @return mapper redacting sensitive properties like {@link FilteredJsonMapper#getInstance()}
+     */
+    public static BinaryMapper getFilteredInstance(BinaryFormat format) {
+        return filteredSerializers.get(format);
+    }
+
+    public BinaryFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the object can't be serialized
+     */
+    @Override
+    public byte[] map(boolean pretty, boolean printClassName, Object obj) {
+        long started = System.nanoTime();
+        try {
+            byte[] document = writer.writeValueAsBytes(obj);
+            Metrics metrics = MetricsRegistry.getMetrics();
+            if (metrics.isEnabled()) {
+                metrics.serialization(format.name(), document.length, System.nanoTime() - started);
+            }
+            return document;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unable to map " + obj.getClass().getName() + " to " + format, e);
+        }
+    }
+
+    /**
+     * Writes the object directly to the stream. The stream is flushed but not closed.
+     *
+     * @param obj - object to map
+     * @param out - target stream
+     * @throws IOException if the object can't be serialized or the stream can't be written
+     */
+    public void mapTo(Object obj, OutputStream out) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            // the caller owns the target, closing the generator must only flush it
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            writer.writeValue(generator, obj);
+        }
+    }
+
+    /**
+     * Writes the object into the buffer starting at its current position, e.g. into a pooled direct buffer.
+     *
+     * @param obj - object to map
+     * @param out - target buffer, its position is advanced by the number of bytes written
+     * @throws IOException if the object can't be serialized
+     * @throws java.nio.BufferOverflowException if the buffer has not enough space remaining
+     */
+    public void mapTo(Object obj, ByteBuffer out) throws IOException {
+        mapTo(obj, new ByteBufferBackedOutputStream(out));
+    }
+
+    public <T> T read(byte[] content, Class<T> type) throws IOException {
+        return mapper.readValue(content, type);
+    }
+
+    /**
+     * @param content source, not closed
+     * @param type    result type
+     * @param <T>     result type
+     * @return parsed object
+     * @throws IOException if the source can't be read or parsed
+     */
+    public <T> T read(InputStream content, Class<T> type) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(content)) {
+            // the caller owns the source
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            return mapper.readValue(parser, type);
+        }
+    }
+}
@@ -15,42 +15,133 @@
 
 package com.epam.dep.esp.common.json;
 
-import com.epam.dep.esp.common.json.filter.PasswordFilter;
+import com.epam.dep.esp.common.json.filter.RedactionRule;
+import com.epam.dep.esp.common.json.filter.Redactor;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.introspect.Annotated;
-import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
-import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps objects to JSON redacting sensitive properties. The default instance drops every property
+ * which name contains 'password', custom rules are configured with {@link #builder()}:
+ * <pre>
+ * FilteredJsonMapper mapper = FilteredJsonMapper.builder()
+ *         .rule(RedactionRule.drop("password"))
+ *         .rule(RedactionRule.builder().name("token").action(RedactionAction.MASK).build())
+ *         .build();
+ * </pre>
+ */
 public class FilteredJsonMapper extends AbstractJsonMapper {
-    private static final ObjectMapper mapper = new ObjectMapper();
-    private static SimpleFilterProvider filters = new SimpleFilterProvider().addFilter(PasswordFilter.PASSWORD, new PasswordFilter());
-    private static FilteredJsonMapper serializer = new FilteredJsonMapper();
+    public static final String PASSWORD = "password";
 
-    static {
-        filters.setFailOnUnknownId(false);
-        mapper.setFilterProvider(filters);
-        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-        mapper.setAnnotationIntrospector(new JacksonAnnotationIntrospector() {
-            @Override
-            public Object findFilterId(Annotated a) {
-                if (Object.class.isAssignableFrom(a.getRawType())) {
-                    return PasswordFilter.PASSWORD;
-                }
-                return super.findFilterId(a);
-            }
-        });
-    }
+    private static FilteredJsonMapper serializer = builder().build();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Redactor redactor;
+    private final ObjectWriter writer;
+    private final ObjectWriter prettyWriter;
 
-    private FilteredJsonMapper() {
+    private FilteredJsonMapper(Redactor redactor) {
+        this.redactor = redactor;
+        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        redactor.configure(mapper);
+        // writers take a snapshot of the configuration, so they are created once it is complete
+        writer = mapper.writer();
+        prettyWriter = mapper.writer(new DefaultPrettyPrinter());
     }
 
     public static FilteredJsonMapper getInstance() {
         return serializer;
     }
 
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a mapper with its own serializer cache, instances are expected to be kept and reused.
+     *
+     * @param sensitiveNames case insensitive regular expressions of property names to skip
+     * @return new mapper
+     */
+    public static FilteredJsonMapper newInstance(String... sensitiveNames) {
+        return builder().sensitiveNames(sensitiveNames).build();
+    }
+
+    public Redactor getRedactor() {
+        return redactor;
+    }
+
     @Override
     protected ObjectMapper getObjectMapper() {
         return mapper;
     }
+
+    @Override
+    protected ObjectWriter getObjectWriter(boolean pretty) {
+        return pretty ? prettyWriter : writer;
+    }
+
+    public static class Builder {
+        private final List<RedactionRule> rules = new ArrayList<>();
+        private String mask = Redactor.DEFAULT_MASK;
+        private byte[] hashKey;
+
+        private Builder() {
+        }
+
+        /**
+         * @param rule rule to apply, rules are checked in the order they are added
+         * @return this builder
+         */
+        public Builder rule(RedactionRule rule) {
+            rules.add(rule);
+            return this;
+        }
+
+        /**
+         * @param sensitiveNames case insensitive regular expressions of property names to drop
+         * @return this builder
+         */
+        public Builder sensitiveNames(String... sensitiveNames) {
+            for (String name : sensitiveNames) {
+                rules.add(RedactionRule.drop(name));
+            }
+            return this;
+        }
+
+        /**
+         * @param mask replacement for masked values
+         * @return this builder
+         */
+        public Builder mask(String mask) {
+            this.mask = mask;
+            return this;
+        }
+
+        /**
+         * @param hashKey HMAC key for hashed values, set it to get equal hashes from different mappers
+         *                or processes; every mapper generates a random key by default
+         * @return this builder
+         */
+        public Builder hashKey(byte[] hashKey) {
+            this.hashKey = hashKey.clone();
+            return this;
+        }
+
+        /**
+         * @return new mapper, drops 'password' properties if no rules were added
+         */
+        public FilteredJsonMapper build() {
+            List<RedactionRule> effective = new ArrayList<>(rules);
+            if (effective.isEmpty()) {
+                effective.add(RedactionRule.drop(PASSWORD));
+            }
+            return new FilteredJsonMapper(new Redactor(effective, mask, hashKey));
+        }
+    }
 }
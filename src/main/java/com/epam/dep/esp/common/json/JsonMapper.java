@@ -15,25 +15,57 @@
 
 package com.epam.dep.esp.common.json;
 
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
 
+/**
+ * Maps objects to JSON using one shared {@link ObjectMapper}, so the serializer cache is built once for all threads.
+ * The legacy mode keeping a separate mapper per thread can be enabled with the
+ * {@value #THREAD_LOCAL_MAPPER_PROPERTY} system property or used explicitly via {@link #getThreadLocalInstance()}.
+ */
 public class JsonMapper extends AbstractJsonMapper {
+    public static final String THREAD_LOCAL_MAPPER_PROPERTY = "gmp.json.threadLocalMapper";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectWriter writer = mapper.writer();
+    private static final ObjectWriter prettyWriter = mapper.writer(new DefaultPrettyPrinter());
     private static final ThreadLocal<ObjectMapper> objectMapperThreadLocal = ThreadLocal.withInitial(() -> new ObjectMapper());
 
-    private static JsonMapper serializer = new JsonMapper();
+    private static JsonMapper sharedSerializer = new JsonMapper(false);
+    private static JsonMapper threadLocalSerializer = new JsonMapper(true);
+    private static JsonMapper serializer = Boolean.getBoolean(THREAD_LOCAL_MAPPER_PROPERTY) ? threadLocalSerializer : sharedSerializer;
+
+    private final boolean threadLocal;
 
-    private JsonMapper() {
+    private JsonMapper(boolean threadLocal) {
+        this.threadLocal = threadLocal;
     }
 
     public static JsonMapper getInstance() {
         return serializer;
     }
 
+    /**
+     * @return legacy mapper keeping a separate {@link ObjectMapper} per thread
+     */
+    public static JsonMapper getThreadLocalInstance() {
+        return threadLocalSerializer;
+    }
+
     @Override
     protected ObjectMapper getObjectMapper() {
-        return objectMapperThreadLocal.get();
+        return threadLocal ? objectMapperThreadLocal.get() : mapper;
+    }
+
+    @Override
+    protected ObjectWriter getObjectWriter(boolean pretty) {
+        if (threadLocal) {
+            return super.getObjectWriter(pretty);
+        }
+        return pretty ? prettyWriter : writer;
     }
 
     public void cleanCache() {
@@ -0,0 +1,68 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Reverse of {@link com.epam.dep.esp.common.ObjectMapper}: parses JSON documents into objects.
+ * Use {@code Object.class} as a type to get plain maps, lists and scalars.
+ * Streams and readers are parsed directly and are not closed by the {@code read} methods.
+ */
+public interface JsonReader {
+    <T> T read(String content, Class<T> type) throws IOException;
+
+    <T> T read(byte[] content, Class<T> type) throws IOException;
+
+    <T> T read(InputStream content, Class<T> type) throws IOException;
+
+    <T> T read(Reader content, Class<T> type) throws IOException;
+
+    JsonNode readTree(String content) throws IOException;
+
+    JsonNode readTree(byte[] content) throws IOException;
+
+    JsonNode readTree(InputStream content) throws IOException;
+
+    JsonNode readTree(Reader content) throws IOException;
+
+    /**
+     * Lazily reads elements of a root level JSON array or a sequence of root level documents (NDJSON)
+     * one by one without materializing the whole document.
+     *
+     * @param content source, closed together with the returned iterator
+     * @param type    type of an element
+     * @param <T>     type of an element
+     * @return iterator over elements, has to be closed
+     * @throws IOException if the source can't be read
+     */
+    <T> MappingIterator<T> readValues(InputStream content, Class<T> type) throws IOException;
+
+    /**
+     * @param content source, closed together with the returned iterator
+     * @param type    type of an element
+     * @param <T>     type of an element
+     * @return iterator over elements, has to be closed
+     * @throws IOException if the source can't be read
+     * @see #readValues(InputStream, Class)
+     */
+    <T> MappingIterator<T> readValues(Reader content, Class<T> type) throws IOException;
+}
@@ -0,0 +1,150 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes a sequence of records either as newline-delimited JSON or as a single JSON array.
+ */
+class JsonSequenceWriter {
+    private static final byte NEW_LINE = '\n';
+    private static final byte COMMA = ',';
+    private static final int CHUNK_BUFFER_SIZE = 8192;
+
+    private final JsonFactory factory;
+    private final ObjectWriter writer;
+    private final boolean array;
+
+    JsonSequenceWriter(JsonFactory factory, ObjectWriter writer, boolean array) {
+        this.factory = factory;
+        // the sink is flushed once at the end, not after every record
+        this.writer = writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.array = array;
+    }
+
+    long write(Iterator<?> items, OutputStream out) throws IOException {
+        long count = 0;
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // records are separated explicitly
+            generator.setRootValueSeparator(null);
+            try (SequenceWriter sequence = array ? writer.writeValuesAsArray(generator) : writer.writeValues(generator)) {
+                while (items.hasNext()) {
+                    sequence.write(items.next());
+                    if (!array) {
+                        generator.writeRaw((char) NEW_LINE);
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Serializes chunks of records on the pool while the calling thread consumes the iterator
+     * and writes finished chunks in the original order.
+     */
+    long write(Iterator<?> items, OutputStream out, ForkJoinPool pool, int chunkSize) throws IOException {
+        int window = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>(window);
+        long count = 0;
+        boolean first = true;
+        if (array) {
+            out.write('[');
+        }
+        try {
+            while (items.hasNext()) {
+                List<Object> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && items.hasNext()) {
+                    chunk.add(items.next());
+                }
+                count += chunk.size();
+                pending.addLast(pool.submit(() -> serializeChunk(chunk)));
+                if (pending.size() >= window) {
+                    first = writeChunk(out, pending.removeFirst(), first);
+                }
+            }
+            while (!pending.isEmpty()) {
+                first = writeChunk(out, pending.removeFirst(), first);
+            }
+        } catch (UncheckedIOException e) {
+            throw unwrap(e);
+        } finally {
+            for (ForkJoinTask<byte[]> task : pending) {
+                task.cancel(false);
+            }
+        }
+        if (array) {
+            out.write(']');
+        }
+        out.flush();
+        return count;
+    }
+
+    private boolean writeChunk(OutputStream out, ForkJoinTask<byte[]> task, boolean first) throws IOException {
+        if (array && !first) {
+            out.write(COMMA);
+        }
+        out.write(task.join());
+        return false;
+    }
+
+    private static IOException unwrap(UncheckedIOException e) {
+        // a task failed on another thread may be rethrown as a copy wrapping the original exception
+        Throwable cause = e;
+        while (cause != null && !(cause instanceof IOException)) {
+            cause = cause.getCause();
+        }
+        return cause != null ? (IOException) cause : new IOException(e);
+    }
+
+    private byte[] serializeChunk(List<Object> chunk) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(CHUNK_BUFFER_SIZE);
+        try (JsonGenerator generator = factory.createGenerator(buffer)) {
+            generator.setRootValueSeparator(null);
+            Iterator<Object> items = chunk.iterator();
+            while (items.hasNext()) {
+                writer.writeValue(generator, items.next());
+                if (!array) {
+                    generator.writeRaw((char) NEW_LINE);
+                } else if (items.hasNext()) {
+                    generator.writeRaw((char) COMMA);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+}
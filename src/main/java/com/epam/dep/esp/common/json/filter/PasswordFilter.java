@@ -20,17 +20,63 @@ import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.ser.PropertyWriter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
 /**
- * Do not serializes 'password' fields"
+ * Do not serializes fields which names match one of the sensitive name patterns, 'password' by default.
+ *
+ * @deprecated {@link com.epam.dep.esp.common.json.FilteredJsonMapper} no longer uses this filter,
+ * configure {@link RedactionRule}s with {@code FilteredJsonMapper.builder()} or apply a {@link Redactor}
+ * to a custom mapper, it resolves bean properties once per serializer instead of once per call.
  */
-
+@Deprecated
 public class PasswordFilter extends SimpleBeanPropertyFilter {
     public static final String PASSWORD = "password";
 
+    private final List<Pattern> patterns;
+
+    public PasswordFilter() {
+        this(Collections.singletonList(PASSWORD));
+    }
+
+    /**
+     * @param sensitiveNames case insensitive regular expressions, a property is skipped if its name contains a match
+     */
+    public PasswordFilter(String... sensitiveNames) {
+        this(Arrays.asList(sensitiveNames));
+    }
+
+    /**
+     * @param sensitiveNames case insensitive regular expressions, a property is skipped if its name contains a match
+     */
+    public PasswordFilter(Collection<String> sensitiveNames) {
+        this.patterns = sensitiveNames.stream()
+                .map(name -> Pattern.compile(name, Pattern.CASE_INSENSITIVE))
+                .collect(Collectors.toList());
+    }
+
     @Override
     public void serializeAsField(Object pojo, JsonGenerator jgen, SerializerProvider provider, PropertyWriter writer) throws Exception {
-        if (!writer.getName().toLowerCase().contains(PASSWORD)) {
+        if (!isSensitive(writer.getName())) {
             writer.serializeAsField(pojo, jgen, provider);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @param name property name
+     * @return true if the property must not be serialized
+     */
+    public boolean isSensitive(String name) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(name).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
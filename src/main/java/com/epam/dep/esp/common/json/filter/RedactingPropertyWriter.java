@@ -0,0 +1,69 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json.filter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+
+/**
+ * Writes a masked or hashed value instead of the property value, null values are written as usual.
+ */
+class RedactingPropertyWriter extends BeanPropertyWriter {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Redactor redactor;
+    private final RedactionAction action;
+
+    RedactingPropertyWriter(BeanPropertyWriter base, Redactor redactor, RedactionAction action) {
+        super(base);
+        this.redactor = redactor;
+        this.action = action;
+    }
+
+    private RedactingPropertyWriter(RedactingPropertyWriter base, PropertyName name) {
+        super(base, name);
+        this.redactor = base.redactor;
+        this.action = base.action;
+    }
+
+    @Override
+    protected BeanPropertyWriter _new(PropertyName newName) {
+        return new RedactingPropertyWriter(this, newName);
+    }
+
+    @Override
+    public void serializeAsField(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+        Object value = get(bean);
+        if (value == null) {
+            super.serializeAsField(bean, gen, prov);
+            return;
+        }
+        gen.writeFieldName(_name);
+        gen.writeString(redactor.redact(action, value));
+    }
+
+    @Override
+    public void serializeAsElement(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+        Object value = get(bean);
+        if (value == null) {
+            super.serializeAsElement(bean, gen, prov);
+            return;
+        }
+        gen.writeString(redactor.redact(action, value));
+    }
+}
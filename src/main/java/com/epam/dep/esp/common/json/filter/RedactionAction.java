@@ -0,0 +1,35 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json.filter;
+
+/**
+ * What happens to a property matched by a {@link RedactionRule}.
+ */
+public enum RedactionAction {
+    /**
+     * The property is not serialized at all.
+     */
+    DROP,
+    /**
+     * The property is serialized with the mask string instead of its value.
+     */
+    MASK,
+    /**
+     * The property is serialized as a hex HMAC-SHA256 of its string value, so equal values stay comparable
+     * without exposing low-entropy secrets, see {@link Redactor} for the key.
+     */
+    HASH
+}
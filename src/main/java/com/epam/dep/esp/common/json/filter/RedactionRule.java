@@ -0,0 +1,153 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json.filter;
+
+import java.lang.annotation.Annotation;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Matches properties by name, type, declaring type and annotation. Every configured criterion has to match,
+ * at least one criterion is required.
+ * <pre>
+ * RedactionRule.builder().name("token|secret").action(RedactionAction.MASK).build();
+ * RedactionRule.builder().annotation(Sensitive.class).action(RedactionAction.HASH).build();
+ * </pre>
+ */
+public class RedactionRule {
+    private final Pattern name;
+    private final Class<?> type;
+    private final Class<?> declaringType;
+    private final Class<? extends Annotation> annotation;
+    private final RedactionAction action;
+
+    private RedactionRule(Builder builder) {
+        this.name = builder.name;
+        this.type = builder.type;
+        this.declaringType = builder.declaringType;
+        this.annotation = builder.annotation;
+        this.action = builder.action;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param name case insensitive regular expression, a property matches if its name contains a match
+     * @return rule dropping matched properties
+     */
+    public static RedactionRule drop(String name) {
+        return builder().name(name).action(RedactionAction.DROP).build();
+    }
+
+    public RedactionAction getAction() {
+        return action;
+    }
+
+    /**
+     * @param declaringType    class the property belongs to
+     * @param propertyName     property name or map key
+     * @param propertyType     declared type of the property or runtime type of a map value, may be null
+     * @param annotationLookup annotations of the property, null if the property has no annotations (map entries)
+     * @return true if the rule applies to the property
+     */
+    public boolean matches(Class<?> declaringType, String propertyName, Class<?> propertyType,
+                           Function<Class<? extends Annotation>, Annotation> annotationLookup) {
+        if (this.declaringType != null && (declaringType == null || !this.declaringType.isAssignableFrom(declaringType))) {
+            return false;
+        }
+        if (type != null && (propertyType == null || !type.isAssignableFrom(propertyType))) {
+            return false;
+        }
+        if (annotation != null && (annotationLookup == null || annotationLookup.apply(annotation) == null)) {
+            return false;
+        }
+        return name == null || name.matcher(propertyName).find();
+    }
+
+    @Override
+    public String toString() {
+        return "RedactionRule{name=" + name + ", type=" + type + ", declaringType=" + declaringType
+                + ", annotation=" + annotation + ", action=" + action + '}';
+    }
+
+    public static class Builder {
+        private Pattern name;
+        private Class<?> type;
+        private Class<?> declaringType;
+        private Class<? extends Annotation> annotation;
+        private RedactionAction action = RedactionAction.DROP;
+
+        private Builder() {
+        }
+
+        /**
+         * @param name case insensitive regular expression, a property matches if its name contains a match
+         * @return this builder
+         */
+        public Builder name(String name) {
+            this.name = Pattern.compile(name, Pattern.CASE_INSENSITIVE);
+            return this;
+        }
+
+        /**
+         * @param type property type or its supertype
+         * @return this builder
+         */
+        public Builder type(Class<?> type) {
+            this.type = type;
+            return this;
+        }
+
+        /**
+         * @param declaringType class declaring the property or its supertype
+         * @return this builder
+         */
+        public Builder declaringType(Class<?> declaringType) {
+            this.declaringType = declaringType;
+            return this;
+        }
+
+        /**
+         * @param annotation annotation present on the property field, getter or setter
+         * @return this builder
+         */
+        public Builder annotation(Class<? extends Annotation> annotation) {
+            this.annotation = annotation;
+            return this;
+        }
+
+        /**
+         * @param action what to do with matched properties, {@link RedactionAction#DROP} by default
+         * @return this builder
+         */
+        public Builder action(RedactionAction action) {
+            this.action = action;
+            return this;
+        }
+
+        public RedactionRule build() {
+            if (action == null) {
+                throw new IllegalArgumentException("Redaction action is required");
+            }
+            if (name == null && type == null && declaringType == null && annotation == null) {
+                throw new IllegalArgumentException("Redaction rule requires a name, type, declaring type or annotation");
+            }
+            return new RedactionRule(this);
+        }
+    }
+}
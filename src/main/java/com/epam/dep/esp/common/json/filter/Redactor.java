@@ -0,0 +1,193 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json.filter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.databind.ser.std.MapProperty;
+import com.fasterxml.jackson.databind.ser.std.MapSerializer;
+import com.fasterxml.jackson.databind.type.MapType;
+
+import java.lang.annotation.Annotation;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Applies {@link RedactionRule}s to an {@link ObjectMapper}. Rules are evaluated once when the serializer
+ * of a bean type is built, matched properties are removed or replaced by redacting writers,
+ * so serializing a bean costs the same as without redaction. Map entries are checked by key on every call.
+ * <p>
+ * {@link RedactionAction#HASH}ed values are written as HMAC-SHA256 with a secret key, so short secrets
+ * can not be recovered from the output by trying every candidate. Without a configured key every redactor
+ * generates a random one: hashes are comparable within one redactor only, not across mappers or restarts.
+ */
+public class Redactor {
+    public static final String FILTER_ID = "redaction";
+    public static final String DEFAULT_MASK = "******";
+    private static final String HASH_ALGORITHM = "HmacSHA256";
+    private static final int KEY_LENGTH = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final List<RedactionRule> rules;
+    private final String mask;
+    private final SecretKeySpec hashKey;
+
+    /**
+     * Creates a redactor hashing with a random key.
+     *
+     * @param rules rules in priority order, the first matching rule wins
+     * @param mask  replacement for {@link RedactionAction#MASK}ed values
+     */
+    public Redactor(List<RedactionRule> rules, String mask) {
+        this(rules, mask, null);
+    }
+
+    /**
+     * @param rules   rules in priority order, the first matching rule wins
+     * @param mask    replacement for {@link RedactionAction#MASK}ed values
+     * @param hashKey HMAC key for {@link RedactionAction#HASH}ed values, a random key is generated if null
+     */
+    public Redactor(List<RedactionRule> rules, String mask, byte[] hashKey) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.mask = mask;
+        this.hashKey = new SecretKeySpec(hashKey == null ? randomKey() : hashKey, HASH_ALGORITHM);
+    }
+
+    public List<RedactionRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Registers the redaction serializers and the map entry filter in the mapper.
+     *
+     * @param mapper mapper to configure
+     * @return the same mapper
+     */
+    public ObjectMapper configure(ObjectMapper mapper) {
+        mapper.registerModule(new SimpleModule(FILTER_ID).setSerializerModifier(new RedactionModifier()));
+        SimpleFilterProvider filters = new SimpleFilterProvider().addFilter(FILTER_ID, new MapEntryFilter());
+        filters.setFailOnUnknownId(false);
+        mapper.setFilterProvider(filters);
+        return mapper;
+    }
+
+    /**
+     * @return action of the first matching rule or null if the property is serialized as is
+     * @see RedactionRule#matches(Class, String, Class, Function)
+     */
+    public RedactionAction resolve(Class<?> declaringType, String propertyName, Class<?> propertyType,
+                                   Function<Class<? extends Annotation>, Annotation> annotationLookup) {
+        for (RedactionRule rule : rules) {
+            if (rule.matches(declaringType, propertyName, propertyType, annotationLookup)) {
+                return rule.getAction();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param action {@link RedactionAction#MASK} or {@link RedactionAction#HASH}
+     * @param value  not null value
+     * @return replacement of the value
+     */
+    public String redact(RedactionAction action, Object value) {
+        if (action == RedactionAction.HASH) {
+            return hash(String.valueOf(value));
+        }
+        return mask;
+    }
+
+    private static byte[] randomKey() {
+        byte[] key = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    private String hash(String value) {
+        try {
+            // Mac instances are not thread safe, a new one is cheap compared to the serialization itself
+            Mac mac = Mac.getInstance(HASH_ALGORITHM);
+            mac.init(hashKey);
+            byte[] digest = mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not supported", e);
+        }
+    }
+
+    private class RedactionModifier extends BeanSerializerModifier {
+        @Override
+        public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc, List<BeanPropertyWriter> beanProperties) {
+            Class<?> beanType = beanDesc.getBeanClass();
+            List<BeanPropertyWriter> result = new ArrayList<>(beanProperties.size());
+            for (BeanPropertyWriter property : beanProperties) {
+                RedactionAction action = resolve(beanType, property.getName(), property.getType().getRawClass(),
+                        annotation -> property.getAnnotation(annotation));
+                if (action == null) {
+                    result.add(property);
+                } else if (action != RedactionAction.DROP) {
+                    result.add(new RedactingPropertyWriter(property, Redactor.this, action));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public JsonSerializer<?> modifyMapSerializer(SerializationConfig config, MapType valueType, BeanDescription beanDesc, JsonSerializer<?> serializer) {
+            if (serializer instanceof MapSerializer) {
+                return ((MapSerializer) serializer).withFilterId(FILTER_ID);
+            }
+            return serializer;
+        }
+    }
+
+    private class MapEntryFilter extends SimpleBeanPropertyFilter {
+        @Override
+        public void serializeAsField(Object pojo, JsonGenerator jgen, SerializerProvider provider, PropertyWriter writer) throws Exception {
+            Object value = writer instanceof MapProperty ? ((MapProperty) writer).getValue() : null;
+            RedactionAction action = resolve(pojo == null ? null : pojo.getClass(), writer.getName(),
+                    value == null ? null : value.getClass(), null);
+            if (action == null || (value == null && action != RedactionAction.DROP)) {
+                writer.serializeAsField(pojo, jgen, provider);
+            } else if (action != RedactionAction.DROP) {
+                jgen.writeFieldName(writer.getName());
+                jgen.writeString(redact(action, value));
+            }
+        }
+    }
+}
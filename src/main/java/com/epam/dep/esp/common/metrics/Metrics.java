@@ -0,0 +1,122 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.metrics;
+
+/**
+ * Receives measurements from {@link com.epam.dep.esp.common.web.Web}, {@link com.epam.dep.esp.common.OS},
+ * the JSON mappers and {@link com.epam.dep.esp.common.freemarker.FreemarkerHelper}.
+ * Implementations are called on the measured threads and must be thread-safe and cheap.
+ * The active implementation is set with {@link MetricsRegistry#setMetrics(Metrics)}.
+ */
+public interface Metrics {
+
+    /**
+     * @return false if measurements are discarded, callers may skip collecting them
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * @param method        HTTP method
+     * @param route         target host as scheme://host:port
+     * @param status        response status or -1 if no response was received
+     * @param durationNanos time from sending the request to reading the response body
+     */
+    default void httpRequest(String method, String route, int status, long durationNanos) {
+    }
+
+    /**
+     * @param pool      connection pool name
+     * @param waitNanos time spent waiting for a connection lease
+     */
+    default void httpConnectionLease(String pool, long waitNanos) {
+    }
+
+    /**
+     * @param pool      connection pool name
+     * @param leased    connections in use
+     * @param available idle connections
+     * @param pending   requests waiting for a connection
+     */
+    default void httpPoolStats(String pool, int leased, int available, int pending) {
+    }
+
+    /**
+     * @param pool name of a closed connection pool, its stats are not reported anymore
+     */
+    default void httpPoolClosed(String pool) {
+    }
+
+    /**
+     * @param method  HTTP method
+     * @param route   target host as scheme://host:port
+     * @param allowed false if the retry budget of the client was exhausted and the request was not retried
+     */
+    default void httpRetry(String method, String route, boolean allowed) {
+    }
+
+    /**
+     * @param result "hit", "miss", "validated" or "coalesced", see {@link com.epam.dep.esp.common.web.WebCache}
+     */
+    default void httpCache(String result) {
+    }
+
+    /**
+     * @param command       executable name
+     * @param exitCode      exit code or null if the process did not finish in time
+     * @param timedOut      true if the process did not finish in time
+     * @param durationNanos time from spawning the process to its exit or timeout
+     */
+    default void processExit(String command, Integer exitCode, boolean timedOut, long durationNanos) {
+    }
+
+    /**
+     * @param command   executable name
+     * @param waitNanos time spent in the queue of the process scheduler
+     */
+    default void processQueueWait(String command, long waitNanos) {
+    }
+
+    /**
+     * @param command executable name
+     * @param reason  "queueFull" or "timeout"
+     */
+    default void processRejected(String command, String reason) {
+    }
+
+    /**
+     * @param queued  commands waiting for a permit of the process scheduler
+     * @param running commands holding a permit
+     */
+    default void processSchedulerStats(int queued, int running) {
+    }
+
+    /**
+     * @param mapper        mapper name
+     * @param size          number of characters or bytes written
+     * @param durationNanos serialization time
+     */
+    default void serialization(String mapper, long size, long durationNanos) {
+    }
+
+    /**
+     * @param template      template name
+     * @param durationNanos rendering time
+     */
+    default void templateRender(String template, long durationNanos) {
+    }
+}
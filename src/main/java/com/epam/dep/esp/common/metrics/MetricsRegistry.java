@@ -0,0 +1,44 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.metrics;
+
+/**
+ * Holds the {@link Metrics} implementation used by the library, measurements are discarded by default.
+ */
+public final class MetricsRegistry {
+    private static final Metrics NOOP = new Metrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    private static volatile Metrics metrics = NOOP;
+
+    private MetricsRegistry() {
+    }
+
+    public static Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics implementation to use or null to discard measurements
+     */
+    public static void setMetrics(Metrics metrics) {
+        MetricsRegistry.metrics = metrics == null ? NOOP : metrics;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes measurements to a Micrometer registry. Micrometer is an optional dependency,
+ * io.micrometer:micrometer-core has to be added by the application using this class.
+ * <pre>
+ * MetricsRegistry.setMetrics(new MicrometerMetrics(meterRegistry));
+ * </pre>
+ */
+public class MicrometerMetrics implements Metrics {
+    private final MeterRegistry registry;
+    private final Map<String, PoolGauges> pools = new ConcurrentHashMap<>();
+    private final AtomicInteger processesQueued = new AtomicInteger();
+    private final AtomicInteger processesRunning = new AtomicInteger();
+
+    public MicrometerMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("gmp.process.queued", processesQueued, AtomicInteger::get).register(registry);
+        Gauge.builder("gmp.process.running", processesRunning, AtomicInteger::get).register(registry);
+    }
+
+    @Override
+    public void httpRequest(String method, String route, int status, long durationNanos) {
+        Timer.builder("gmp.http.requests")
+                .tag("method", method)
+                .tag("route", route)
+                .tag("status", String.valueOf(status))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void httpConnectionLease(String pool, long waitNanos) {
+        Timer.builder("gmp.http.pool.lease")
+                .tag("pool", pool)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void httpPoolStats(String pool, int leased, int available, int pending) {
+        PoolGauges gauges = pools.computeIfAbsent(pool, PoolGauges::new);
+        gauges.leased.set(leased);
+        gauges.available.set(available);
+        gauges.pending.set(pending);
+    }
+
+    @Override
+    public void httpPoolClosed(String pool) {
+        PoolGauges gauges = pools.remove(pool);
+        if (gauges != null) {
+            gauges.remove();
+        }
+    }
+
+    @Override
+    public void httpRetry(String method, String route, boolean allowed) {
+        Counter.builder("gmp.http.retries")
+                .tag("method", method)
+                .tag("route", route)
+                .tag("outcome", allowed ? "retried" : "budgetExhausted")
+                .register(registry)
+                .increment();
+    }
+
+    @Override
+    public void httpCache(String result) {
+        Counter.builder("gmp.http.cache")
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    @Override
+    public void processExit(String command, Integer exitCode, boolean timedOut, long durationNanos) {
+        Timer.builder("gmp.process.duration")
+                .tag("command", command)
+                .tag("outcome", timedOut ? "timeout" : "exit")
+                .tag("exitCode", String.valueOf(exitCode))
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void processQueueWait(String command, long waitNanos) {
+        Timer.builder("gmp.process.queue.wait")
+                .tag("command", command)
+                .register(registry)
+                .record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void processRejected(String command, String reason) {
+        Counter.builder("gmp.process.rejected")
+                .tag("command", command)
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    @Override
+    public void processSchedulerStats(int queued, int running) {
+        processesQueued.set(queued);
+        processesRunning.set(running);
+    }
+
+    @Override
+    public void serialization(String mapper, long size, long durationNanos) {
+        DistributionSummary.builder("gmp.serialization.size")
+                .tag("mapper", mapper)
+                .register(registry)
+                .record(size);
+        Timer.builder("gmp.serialization.duration")
+                .tag("mapper", mapper)
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void templateRender(String template, long durationNanos) {
+        Timer.builder("gmp.template.render")
+                .tag("template", template)
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private class PoolGauges {
+        private final AtomicInteger leased = new AtomicInteger();
+        private final AtomicInteger available = new AtomicInteger();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final Gauge[] gauges;
+
+        PoolGauges(String pool) {
+            gauges = new Gauge[]{
+                    Gauge.builder("gmp.http.pool.leased", leased, AtomicInteger::get).tag("pool", pool).register(registry),
+                    Gauge.builder("gmp.http.pool.available", available, AtomicInteger::get).tag("pool", pool).register(registry),
+                    Gauge.builder("gmp.http.pool.pending", pending, AtomicInteger::get).tag("pool", pool).register(registry)
+            };
+        }
+
+        void remove() {
+            for (Gauge gauge : gauges) {
+                registry.remove(gauge);
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+package com.epam.dep.esp.common.web;
+
+import com.epam.dep.esp.common.BufferPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes gzip or deflate content as it is written and writes the decoded bytes to the target channel,
+ * so a compressed body never has to be held in memory. Only the first gzip member is decoded, the deflate
+ * coding is accepted with or without the zlib wrapper. The target channel is not closed.
+ */
+class DecodingChannel implements WritableByteChannel {
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final WritableByteChannel target;
+    private final boolean gzip;
+    private final BufferPool pool = BufferPool.getInstance();
+    private final byte[] input = pool.acquireBytes();
+    private final byte[] output = pool.acquireBytes();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final CRC32 crc = new CRC32();
+    private Inflater inflater;
+    private long decoded;
+    private boolean done;
+    private boolean open = true;
+
+    /**
+     * @param target channel receiving the decoded bytes
+     * @param gzip   true for the gzip coding, false for deflate
+     */
+    DecodingChannel(WritableByteChannel target, boolean gzip) {
+        this.target = target;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int count = src.remaining();
+        while (src.hasRemaining()) {
+            int length = Math.min(src.remaining(), input.length);
+            src.get(input, 0, length);
+            decode(input, 0, length);
+        }
+        return count;
+    }
+
+    /**
+     * @throws EOFException if the content ended before the end of the compressed stream
+     */
+    void finish() throws EOFException {
+        if (!done) {
+            throw new EOFException("Unexpected end of " + (gzip ? "GZIP" : "ZLIB") + " input stream");
+        }
+    }
+
+    /**
+     * @return number of decoded bytes written to the target
+     */
+    long getDecoded() {
+        return decoded;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            if (inflater != null) {
+                inflater.end();
+            }
+            pool.release(input);
+            pool.release(output);
+        }
+    }
+
+    private void decode(byte[] bytes, int offset, int length) throws IOException {
+        if (done) {
+            // data after the end of the compressed stream is ignored
+            return;
+        }
+        if (inflater == null) {
+            pending.write(bytes, offset, length);
+            byte[] head = pending.toByteArray();
+            int headerLength = gzip ? gzipHeaderLength(head) : head.length < 2 ? -1 : 0;
+            if (headerLength < 0) {
+                return;
+            }
+            pending.reset();
+            inflater = new Inflater(gzip || !isZlibHeader(head));
+            inflate(head, headerLength, head.length - headerLength);
+        } else if (inflater.finished()) {
+            trailer(bytes, offset, length);
+        } else {
+            inflate(bytes, offset, length);
+        }
+    }
+
+    private void inflate(byte[] bytes, int offset, int length) throws IOException {
+        inflater.setInput(bytes, offset, length);
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(output);
+                if (count > 0) {
+                    crc.update(output, 0, count);
+                    decoded += count;
+                    ByteBuffer buffer = ByteBuffer.wrap(output, 0, count);
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Preset dictionary is not supported");
+                } else if (inflater.needsInput()) {
+                    return;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        if (gzip) {
+            int remaining = inflater.getRemaining();
+            trailer(bytes, offset + length - remaining, remaining);
+        } else {
+            done = true;
+        }
+    }
+
+    private void trailer(byte[] bytes, int offset, int length) throws ZipException {
+        pending.write(bytes, offset, length);
+        if (pending.size() >= GZIP_TRAILER_SIZE) {
+            byte[] trailer = pending.toByteArray();
+            if (readInt(trailer, 0) != (int) crc.getValue() || readInt(trailer, 4) != (int) decoded) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            done = true;
+        }
+    }
+
+    /**
+     * @return length of the complete gzip header or -1 if more bytes are needed
+     */
+    private static int gzipHeaderLength(byte[] head) throws ZipException {
+        if (head.length < GZIP_HEADER_SIZE) {
+            return -1;
+        }
+        if ((head[0] & 0xff) != 0x1f || (head[1] & 0xff) != 0x8b || head[2] != Deflater.DEFLATED) {
+            throw new ZipException("Not in GZIP format");
+        }
+        int flags = head[3] & 0xff;
+        int position = GZIP_HEADER_SIZE;
+        if ((flags & FEXTRA) != 0) {
+            if (head.length < position + 2) {
+                return -1;
+            }
+            position += 2 + ((head[position] & 0xff) | (head[position + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipString(head, position);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            position = skipString(head, position);
+        }
+        if ((flags & FHCRC) != 0 && position >= 0) {
+            position += 2;
+        }
+        return position >= 0 && position <= head.length ? position : -1;
+    }
+
+    private static int skipString(byte[] head, int position) {
+        for (int i = Math.max(position, 0); position >= 0 && i < head.length; i++) {
+            if (head[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isZlibHeader(byte[] head) {
+        int cmf = head[0] & 0xff;
+        int flg = head[1] & 0xff;
+        return (cmf & 0x0f) == Deflater.DEFLATED && (cmf << 8 | flg) % 31 == 0;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+}
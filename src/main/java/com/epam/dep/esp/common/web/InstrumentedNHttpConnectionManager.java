@@ -0,0 +1,89 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.web;
+
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.SchemePortResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.ConnectingIOReactor;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports connection lease wait time of the async requests to {@link MetricsRegistry}. Unlike the blocking pool,
+ * the lease of a new connection completes once it is connected, so the wait includes the connect time.
+ */
+class InstrumentedNHttpConnectionManager extends PoolingNHttpClientConnectionManager {
+    private final String name;
+
+    /**
+     * @param name             pool name reported to the metrics
+     * @param ioReactor        reactor connecting and serving the connections
+     * @param timeToLiveMillis max lifetime of a connection, -1 for unlimited
+     */
+    InstrumentedNHttpConnectionManager(String name, ConnectingIOReactor ioReactor, long timeToLiveMillis) {
+        super(ioReactor, null, RegistryBuilder.<SchemeIOSessionStrategy>create()
+                        .register("http", NoopIOSessionStrategy.INSTANCE)
+                        .register("https", SSLIOSessionStrategy.getDefaultStrategy())
+                        .build(),
+                (SchemePortResolver) null, (DnsResolver) null, timeToLiveMillis, TimeUnit.MILLISECONDS);
+        this.name = name;
+    }
+
+    @Override
+    public Future<NHttpClientConnection> requestConnection(HttpRoute route, Object state, long connectTimeout, long leaseTimeout,
+                                                           TimeUnit timeUnit, FutureCallback<NHttpClientConnection> callback) {
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (!metrics.isEnabled()) {
+            return super.requestConnection(route, state, connectTimeout, leaseTimeout, timeUnit, callback);
+        }
+        long started = System.nanoTime();
+        return super.requestConnection(route, state, connectTimeout, leaseTimeout, timeUnit, new FutureCallback<NHttpClientConnection>() {
+            @Override
+            public void completed(NHttpClientConnection result) {
+                metrics.httpConnectionLease(name, System.nanoTime() - started);
+                if (callback != null) {
+                    callback.completed(result);
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                metrics.httpConnectionLease(name, System.nanoTime() - started);
+                if (callback != null) {
+                    callback.failed(ex);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                if (callback != null) {
+                    callback.cancelled();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.web;
+
+import org.apache.http.impl.nio.DefaultNHttpClientConnection;
+import org.apache.http.impl.nio.reactor.AbstractIODispatch;
+import org.apache.http.nio.NHttpClientEventHandler;
+import org.apache.http.nio.reactor.IOSession;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+
+/**
+ * Dispatches the I/O events of the {@link WebPool} reactor to the connections created by its NIO connection manager.
+ * An async client normally runs its own reactor with an equivalent dispatch, clients sharing a pool don't.
+ */
+class PoolIODispatch extends AbstractIODispatch<DefaultNHttpClientConnection> {
+    private final NHttpClientEventHandler handler;
+
+    PoolIODispatch(NHttpClientEventHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    protected DefaultNHttpClientConnection createConnection(IOSession session) {
+        // the connection manager attaches a connection to every session it requests
+        session.close();
+        throw new CancelledKeyException();
+    }
+
+    @Override
+    protected void onConnected(DefaultNHttpClientConnection conn) {
+        Object attachment = conn.getContext().getAttribute(IOSession.ATTACHMENT_KEY);
+        try {
+            handler.connected(conn, attachment);
+        } catch (Exception e) {
+            handler.exception(conn, e);
+        }
+    }
+
+    @Override
+    protected void onClosed(DefaultNHttpClientConnection conn) {
+        handler.closed(conn);
+    }
+
+    @Override
+    protected void onException(DefaultNHttpClientConnection conn, IOException e) {
+        handler.exception(conn, e);
+    }
+
+    @Override
+    protected void onInputReady(DefaultNHttpClientConnection conn) {
+        conn.consumeInput(handler);
+    }
+
+    @Override
+    protected void onOutputReady(DefaultNHttpClientConnection conn) {
+        conn.produceOutput(handler);
+    }
+
+    @Override
+    protected void onTimeout(DefaultNHttpClientConnection conn) {
+        try {
+            handler.timeout(conn);
+        } catch (Exception e) {
+            handler.exception(conn, e);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+package com.epam.dep.esp.common.web;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retry rules of {@link Web}, set with {@link Web.Builder#retry(RetryPolicy)}. A failed request is retried if the
+ * response code or the exception is retryable, after an exponentially growing delay with full jitter.
+ * Only idempotent methods are retried unless {@link Builder#retryNonIdempotent(boolean)} is set, a request
+ * with a body that can't be repeated is never retried.
+ * <p>
+ * Every client has a retry budget, a token bucket holding {@link Builder#budget(int, double)} tokens.
+ * A retry takes a token and a successful request returns a fraction of one, so during an outage retries stop
+ * once the bucket is empty instead of multiplying the load.
+ * <pre>
+ * RetryPolicy retry = RetryPolicy.builder().maxAttempts(4).backoff(200, 5000, TimeUnit.MILLISECONDS).build();
+ * Web web = Web.builder().retry(retry).build();
+ * </pre>
+ */
+public class RetryPolicy {
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(
+            Arrays.asList("GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE"));
+
+    private final int maxAttempts;
+    private final Set<Integer> statuses;
+    private final List<Class<? extends Exception>> exceptions;
+    private final long initialDelayNanos;
+    private final long maxDelayNanos;
+    private final boolean retryNonIdempotent;
+    private final int budgetTokens;
+    private final double budgetRatio;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.statuses = Collections.unmodifiableSet(new HashSet<>(builder.statuses));
+        this.exceptions = Collections.unmodifiableList(new ArrayList<>(builder.exceptions));
+        this.initialDelayNanos = builder.initialDelayNanos;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+        this.budgetTokens = builder.budgetTokens;
+        this.budgetRatio = builder.budgetRatio;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return new budget of a client
+     */
+    Budget newBudget() {
+        return new Budget(budgetTokens, budgetRatio);
+    }
+
+    /**
+     * @param httpRequest failed request
+     * @param failure     failure of the attempt, the response code of a {@link WebToolsException} or its cause
+     *                    is checked
+     * @param attempt     number of the failed attempt, starting with 1
+     * @return true if the rules allow another attempt, the budget is not checked
+     */
+    boolean isRetryable(HttpRequestBase httpRequest, Exception failure, int attempt) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        if (!retryNonIdempotent && !IDEMPOTENT_METHODS.contains(httpRequest.getMethod())) {
+            return false;
+        }
+        if (httpRequest instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) httpRequest).getEntity();
+            if (entity != null && !entity.isRepeatable()) {
+                return false;
+            }
+        }
+        Throwable cause = failure;
+        while (cause instanceof WebToolsException) {
+            int statusCode = ((WebToolsException) cause).getStatusCode();
+            if (statusCode > 0) {
+                return statuses.contains(statusCode);
+            }
+            cause = cause.getCause();
+        }
+        for (Class<? extends Exception> type : exceptions) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param attempt number of the failed attempt, starting with 1
+     * @return random delay between 0 and the exponential backoff of the attempt
+     */
+    long delayNanos(int attempt) {
+        long backoff = initialDelayNanos;
+        for (int i = 1; i < attempt && backoff < maxDelayNanos; i++) {
+            backoff *= 2;
+        }
+        return ThreadLocalRandom.current().nextLong(Math.min(backoff, maxDelayNanos) + 1);
+    }
+
+    /**
+     * Runs a delayed attempt of an async request without holding a thread during the delay.
+     */
+    static void schedule(Runnable attempt, long delayNanos) {
+        Scheduler.INSTANCE.schedule(attempt, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Token bucket limiting the retries of a client, counted in thousandths of a token.
+     */
+    static class Budget {
+        private final long maxTokens;
+        private final long deposit;
+        private final AtomicLong tokens;
+
+        Budget(int maxTokens, double ratio) {
+            this.maxTokens = maxTokens * 1000L;
+            this.deposit = Math.round(ratio * 1000);
+            this.tokens = new AtomicLong(this.maxTokens);
+        }
+
+        /**
+         * @return true if a token was taken for a retry
+         */
+        boolean withdraw() {
+            long current;
+            do {
+                current = tokens.get();
+                if (current < 1000) {
+                    return false;
+                }
+            } while (!tokens.compareAndSet(current, current - 1000));
+            return true;
+        }
+
+        /**
+         * Returns a fraction of a token for a successful request.
+         */
+        void deposit() {
+            tokens.accumulateAndGet(deposit, (current, added) -> Math.min(maxTokens, current + added));
+        }
+
+        double getTokens() {
+            return tokens.get() / 1000.0;
+        }
+    }
+
+    private static class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "gmp-web-retry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    public static class Builder {
+        private int maxAttempts = 3;
+        private final Set<Integer> statuses = new HashSet<>(Arrays.asList(429, 500, 502, 503, 504));
+        private final List<Class<? extends Exception>> exceptions = new ArrayList<>(Arrays.asList(
+                SocketException.class, SocketTimeoutException.class, ConnectTimeoutException.class,
+                NoHttpResponseException.class));
+        private long initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private long maxDelayNanos = TimeUnit.SECONDS.toNanos(10);
+        private boolean retryNonIdempotent;
+        private int budgetTokens = 10;
+        private double budgetRatio = 0.1;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxAttempts max number of attempts including the first one, 3 by default
+         * @return this builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param statuses retryable response codes replacing the default 429, 500, 502, 503 and 504
+         * @return this builder
+         */
+        public Builder retryOnStatus(int... statuses) {
+            this.statuses.clear();
+            for (int status : statuses) {
+                this.statuses.add(status);
+            }
+            return this;
+        }
+
+        /**
+         * @param exceptions retryable exceptions replacing the default SocketException, SocketTimeoutException,
+         *                   ConnectTimeoutException and NoHttpResponseException
+         * @return this builder
+         */
+        @SafeVarargs
+        public final Builder retryOn(Class<? extends Exception>... exceptions) {
+            this.exceptions.clear();
+            for (Class<? extends Exception> exception : exceptions) {
+                this.exceptions.add(exception);
+            }
+            return this;
+        }
+
+        /**
+         * @param initialDelay max delay before the second attempt, 100 ms by default; it doubles with every attempt
+         * @param maxDelay     max delay before any attempt, 10 s by default
+         * @param unit         unit of the delays
+         * @return this builder
+         */
+        public Builder backoff(long initialDelay, long maxDelay, TimeUnit unit) {
+            this.initialDelayNanos = Math.max(unit.toNanos(initialDelay), 1);
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        /**
+         * @param retryNonIdempotent true to retry POST and PATCH requests as well, false by default
+         * @return this builder
+         */
+        public Builder retryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        /**
+         * @param maxTokens max number of retries in a row, 10 by default
+         * @param ratio     tokens returned by a successful request, 0.1 by default, so at most one retry per
+         *                  ten successful requests is sustained
+         * @return this builder
+         */
+        public Builder budget(int maxTokens, double ratio) {
+            this.budgetTokens = maxTokens;
+            this.budgetRatio = ratio;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+package com.epam.dep.esp.common.web;
+
+import com.epam.dep.esp.common.BufferPool;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.HttpCacheUpdateException;
+import org.apache.http.client.cache.InputLimit;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.client.cache.ResourceFactory;
+import org.apache.http.impl.client.cache.FileResource;
+import org.apache.http.impl.client.cache.HeapResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LRU cache storage with a memory tier and an optional disk tier, each bounded by the size of the cached bodies.
+ * Bodies up to the memory object size are kept on the heap, bigger ones are written to the cache directory.
+ * The file of a removed entry is deleted once the entry is no longer referenced, a response served from
+ * the entry can still be read.
+ */
+class TieredCacheStorage implements HttpCacheStorage, ResourceFactory {
+    private final int maxEntries;
+    private final long maxMemoryBytes;
+    private final long maxMemoryObjectSize;
+    private final File directory;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, HttpCacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReferenceQueue<HttpCacheEntry> released = new ReferenceQueue<>();
+    private final Set<ResourceReference> pending = ConcurrentHashMap.newKeySet();
+    private long memoryBytes;
+    private long diskBytes;
+    private long evictions;
+
+    /**
+     * @param maxEntries          max number of entries
+     * @param maxMemoryBytes      max size of the bodies kept on the heap
+     * @param maxMemoryObjectSize max size of a body kept on the heap
+     * @param directory           directory of the disk tier or null to keep all bodies on the heap
+     * @param maxDiskBytes        max size of the bodies kept on the disk
+     */
+    TieredCacheStorage(int maxEntries, long maxMemoryBytes, long maxMemoryObjectSize, File directory, long maxDiskBytes) {
+        this.maxEntries = maxEntries;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxMemoryObjectSize = maxMemoryObjectSize;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    @Override
+    public synchronized void putEntry(String key, HttpCacheEntry entry) {
+        disposeReleased();
+        HttpCacheEntry old = entries.put(key, entry);
+        if (old != entry) {
+            if (old != null) {
+                release(old);
+            }
+            add(entry, 1);
+        }
+        evict();
+    }
+
+    @Override
+    public synchronized HttpCacheEntry getEntry(String key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized void removeEntry(String key) {
+        disposeReleased();
+        HttpCacheEntry old = entries.remove(key);
+        if (old != null) {
+            release(old);
+        }
+    }
+
+    @Override
+    public synchronized void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException, HttpCacheUpdateException {
+        HttpCacheEntry updated = callback.update(entries.get(key));
+        if (updated != null) {
+            putEntry(key, updated);
+        }
+    }
+
+    @Override
+    public Resource generate(String requestId, InputStream in, InputLimit limit) throws IOException {
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        OutputStream out = memory;
+        File file = null;
+        BufferPool pool = BufferPool.getInstance();
+        byte[] buffer = pool.acquireBytes();
+        try {
+            long total = 0;
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                if (file == null && directory != null && total + count > maxMemoryObjectSize) {
+                    file = File.createTempFile("gmp-", ".cache", directory);
+                    out = new FileOutputStream(file);
+                    memory.writeTo(out);
+                }
+                out.write(buffer, 0, count);
+                total += count;
+                if (limit != null && total > limit.getValue()) {
+                    limit.reached();
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            if (file != null) {
+                out.close();
+                file.delete();
+            }
+            throw ex;
+        } finally {
+            pool.release(buffer);
+        }
+        if (file == null) {
+            return new HeapResource(memory.toByteArray());
+        }
+        out.close();
+        return new FileResource(file);
+    }
+
+    @Override
+    public Resource copy(String requestId, Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return generate(requestId, in, null);
+        }
+    }
+
+    synchronized int getEntries() {
+        return entries.size();
+    }
+
+    synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Removes all entries and deletes the files of the disk tier.
+     */
+    synchronized void clear() {
+        for (HttpCacheEntry entry : entries.values()) {
+            if (entry.getResource() != null) {
+                entry.getResource().dispose();
+            }
+        }
+        entries.clear();
+        memoryBytes = 0;
+        diskBytes = 0;
+        for (ResourceReference reference : pending) {
+            reference.resource.dispose();
+        }
+        pending.clear();
+    }
+
+    private void evict() {
+        Iterator<HttpCacheEntry> eldest = entries.values().iterator();
+        while (eldest.hasNext() && (entries.size() > maxEntries || memoryBytes > maxMemoryBytes || diskBytes > maxDiskBytes)) {
+            HttpCacheEntry entry = eldest.next();
+            boolean onDisk = entry.getResource() instanceof FileResource;
+            if (entries.size() > maxEntries || (onDisk ? diskBytes > maxDiskBytes : memoryBytes > maxMemoryBytes)) {
+                eldest.remove();
+                release(entry);
+                evictions++;
+            }
+        }
+    }
+
+    private void release(HttpCacheEntry entry) {
+        add(entry, -1);
+        if (entry.getResource() instanceof FileResource) {
+            pending.add(new ResourceReference(entry, released));
+        }
+    }
+
+    private void add(HttpCacheEntry entry, int sign) {
+        Resource resource = entry.getResource();
+        if (resource instanceof FileResource) {
+            diskBytes += sign * resource.length();
+        } else if (resource != null) {
+            memoryBytes += sign * resource.length();
+        }
+    }
+
+    private void disposeReleased() {
+        Reference<? extends HttpCacheEntry> reference;
+        while ((reference = released.poll()) != null) {
+            ResourceReference resourceReference = (ResourceReference) reference;
+            pending.remove(resourceReference);
+            resourceReference.resource.dispose();
+        }
+    }
+
+    private static class ResourceReference extends PhantomReference<HttpCacheEntry> {
+        private final Resource resource;
+
+        ResourceReference(HttpCacheEntry entry, ReferenceQueue<HttpCacheEntry> queue) {
+            super(entry, queue);
+            this.resource = entry.getResource();
+        }
+    }
+}
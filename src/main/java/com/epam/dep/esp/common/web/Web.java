@@ -15,98 +15,173 @@
 
 package com.epam.dep.esp.common.web;
 
+import com.epam.dep.esp.common.BufferPool;
+import com.epam.dep.esp.common.PooledStringWriter;
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.http.*;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.DeflateDecompressingEntity;
 import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.methods.*;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.client.LaxRedirectStrategy;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 
 public class Web {
     public static final int DEFAULT_TIMEOUT = 120000;
+    /**
+     * Prefix of the default pool names, see {@link WebPool.Builder#name(String)}.
+     */
+    public static final String POOL_NAME = "web";
     static final Logger logger = LoggerFactory.getLogger(Web.class);
     private RequestConfig requestConfig;
-    private PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+    private final WebPool pool;
+    private final boolean ownsPool;
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
     private CloseableHttpClient httpClient;
+    private volatile CloseableHttpAsyncClient asyncClient;
+    private final WebCache cache;
+    private final RetryPolicy retryPolicy;
+    private final RetryPolicy.Budget retryBudget;
+
+    private static final HttpRequestInterceptor ACCEPT_ENCODING = new HttpRequestInterceptor() {
+        public void process(
+                final HttpRequest request,
+                final HttpContext context) throws HttpException, IOException {
+            request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, "deflate");
+        }
+    };
+
+    private static final HttpResponseInterceptor CONTENT_DECODER = new HttpResponseInterceptor() {
+        public void process(
+                final HttpResponse response,
+                final HttpContext context) throws HttpException, IOException {
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                String coding = getContentCoding(entity.getContentEncoding());
+                if ("gzip".equals(coding)) {
+                    response.setEntity(new GzipDecompressingEntity(response.getEntity()));
+                } else if ("deflate".equals(coding)) {
+                    response.setEntity(new DeflateDecompressingEntity(response.getEntity()));
+                }
+            }
+        }
+    };
 
     public Web() {
         this(DEFAULT_TIMEOUT);
     }
 
     public Web(int timeout) {
-        // Increase max total connection to 200
-        cm.setMaxTotal(200);
-        // Increase default max connection per route to 20
-        cm.setDefaultMaxPerRoute(20);
+        this(timeout, null);
+    }
+
+    /**
+     * @param timeout connect, socket and connection lease timeout in milliseconds
+     * @param cache   response cache of the blocking requests, null to disable caching
+     */
+    public Web(int timeout, WebCache cache) {
+        this(builder().timeout(timeout).cache(cache));
+    }
+
+    private Web(Builder builder) {
+        this.cache = builder.cache;
+        this.retryPolicy = builder.retryPolicy;
+        this.retryBudget = retryPolicy == null ? null : retryPolicy.newBudget();
+        this.ownsPool = builder.pool == null;
+        this.pool = ownsPool ? builder.poolBuilder.build() : builder.pool;
+        this.keepAliveStrategy = builder.keepAliveMillis < 0 ? null : (response, context) -> {
+            // the Keep-Alive header of the server may shorten the configured time
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration < 0 ? builder.keepAliveMillis : Math.min(duration, builder.keepAliveMillis);
+        };
 
         //Follow redirects
         LaxRedirectStrategy redirectStrategy = new LaxRedirectStrategy();
 
-        httpClient = HttpClients.custom()
-                .setConnectionManager(cm)
+        HttpClientBuilder clientBuilder = cache == null ? HttpClients.custom() : cache.clientBuilder();
+        clientBuilder
+                .setConnectionManager(pool.getConnectionManager())
+                .setConnectionManagerShared(true)
                 .setRedirectStrategy(redirectStrategy)
-                .addInterceptorFirst(new HttpRequestInterceptor() {
-                    public void process(
-                            final HttpRequest request,
-                            final HttpContext context) throws HttpException, IOException {
-                        request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
-                        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "deflate");
-                    }
-                })
-                .addInterceptorFirst(new HttpResponseInterceptor() {
-                    public void process(
-                            final HttpResponse response,
-                            final HttpContext context) throws HttpException, IOException {
-                        HttpEntity entity = response.getEntity();
-                        if (entity != null) {
-                            Header ceHeader = entity.getContentEncoding();
-                            if (ceHeader != null) {
-                                HeaderElement[] codecs = ceHeader.getElements();
-                                for (int i = 0; i < codecs.length; i++) {
-                                    if (codecs[i].getName().equalsIgnoreCase("gzip")) {
-                                        response.setEntity(
-                                                new GzipDecompressingEntity(response.getEntity()));
-                                        return;
-                                    }
-
-                                    if (codecs[i].getName().equalsIgnoreCase("deflate")) {
-                                        response.setEntity(
-                                                new DeflateDecompressingEntity(response.getEntity()));
-                                        return;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                })
-                .build();
+                .addInterceptorFirst(ACCEPT_ENCODING)
+                .addInterceptorFirst(CONTENT_DECODER);
+        if (keepAliveStrategy != null) {
+            clientBuilder.setKeepAliveStrategy(keepAliveStrategy);
+        }
+        httpClient = clientBuilder.build();
 
         requestConfig = RequestConfig.custom()
-                .setSocketTimeout(timeout)
-                .setConnectTimeout(timeout)
-                .setConnectionRequestTimeout(timeout)
+                .setSocketTimeout(builder.timeout)
+                .setConnectTimeout(builder.timeout)
+                .setConnectionRequestTimeout(builder.timeout)
                 .build();
     }
 
+    /**
+     * Configures a client, the connection pool of a client is either its own or shared by {@link Builder#pool(WebPool)}.
+     * <pre>
+     * Web web = Web.builder().timeout(30000).maxTotal(500).maxPerRoute("https://api.example.com", 100)
+     *         .evictIdleAfter(30, TimeUnit.SECONDS).keepAlive(5, TimeUnit.MINUTES).build();
+     * </pre>
+     *
+     * @return builder with the settings of {@link #Web()}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
     /**
      * @param path - URL
      * @return String result for GET request
@@ -127,19 +202,42 @@ public class Web {
      */
     public String post(String path, Map<String, String> headers, Map<String, String> params, Credentials credentials, HttpEntity payload) throws WebToolsException {
         try {
-            URI uri = buildURI(path, params);
-            HttpPost httpPost = new HttpPost(uri);
-            httpPost.setConfig(requestConfig);
-            setRequestEntity(httpPost, payload);
-            addHeaders(httpPost, headers);
-            addCredentials(httpPost, credentials);
-            HttpClientContext context = HttpClientContext.create();
-            return performRequest(context, httpPost);
+            HttpPost httpPost = createPost(path, headers, params, credentials, payload);
+            return withRetry(httpPost, () -> performRequest(HttpClientContext.create(), httpPost));
         } catch (URISyntaxException | IOException ex) {
             throw new WebToolsException("Unable to perform POST. " + ex.getMessage(), ex);
         }
     }
 
+    /**
+     * Non-blocking variant of {@link #post(String, Map, Map, Credentials, HttpEntity)}, the request runs on the
+     * NIO client and no thread waits for the response.
+     *
+     * @param path        path
+     * @param headers     http headers
+     * @param params      http params
+     * @param credentials credentials
+     * @param payload     request body
+     * @return future of the response body, completed on an I/O dispatcher thread
+     */
+    public CompletableFuture<String> postAsync(String path, Map<String, String> headers, Map<String, String> params, Credentials credentials, HttpEntity payload) {
+        try {
+            return performRequestAsync(createPost(path, headers, params, credentials, payload),
+                    BasicAsyncResponseConsumer::new, this::readBufferedEntity);
+        } catch (URISyntaxException ex) {
+            return failed(new WebToolsException("Unable to perform POST. " + ex.getMessage(), ex));
+        }
+    }
+
+    private HttpPost createPost(String path, Map<String, String> headers, Map<String, String> params, Credentials credentials, HttpEntity payload) throws URISyntaxException {
+        HttpPost httpPost = new HttpPost(buildURI(path, params));
+        httpPost.setConfig(requestConfig);
+        setRequestEntity(httpPost, payload);
+        addHeaders(httpPost, headers);
+        addCredentials(httpPost, credentials);
+        return httpPost;
+    }
+
     protected void setRequestEntity(HttpEntityEnclosingRequestBase request, HttpEntity payload) {
         if (payload != null) {
             request.setEntity(payload);
@@ -156,18 +254,270 @@ public class Web {
      */
     public String get(String path, Map<String, String> headers, Map<String, String> params, Credentials credentials) throws WebToolsException {
         try {
-            URI uri = buildURI(path, params);
-            HttpGet httpGet = new HttpGet(uri);
-            httpGet.setConfig(requestConfig);
-            addHeaders(httpGet, headers);
-            addCredentials(httpGet, credentials);
-            HttpClientContext context = HttpClientContext.create();
-            return performRequest(context, httpGet);
+            HttpGet httpGet = createGet(path, headers, params, credentials);
+            if (cache != null) {
+                return cache.coalesce(httpGet, () -> withRetry(httpGet, () -> performRequest(HttpClientContext.create(), httpGet)));
+            }
+            return withRetry(httpGet, () -> performRequest(HttpClientContext.create(), httpGet));
         } catch (URISyntaxException | IOException ex) {
             throw new WebToolsException("Unable to perform GET. " + ex.getMessage(), ex);
         }
     }
 
+    /**
+     * @param path - URL
+     * @return future of the response body of a non-blocking GET request
+     */
+    public CompletableFuture<String> getAsync(String path) {
+        return getAsync(path, null, null, null);
+    }
+
+    /**
+     * Non-blocking variant of {@link #get(String, Map, Map, Credentials)}, the request runs on the NIO client
+     * with the same headers, credentials, content decoding and redirects and no thread waits for the response.
+     *
+     * @param path        path
+     * @param headers     http headers
+     * @param params      http params
+     * @param credentials credentials
+     * @return future of the response body, completed on an I/O dispatcher thread
+     */
+    public CompletableFuture<String> getAsync(String path, Map<String, String> headers, Map<String, String> params, Credentials credentials) {
+        try {
+            return performRequestAsync(createGet(path, headers, params, credentials),
+                    BasicAsyncResponseConsumer::new, this::readBufferedEntity);
+        } catch (URISyntaxException ex) {
+            return failed(new WebToolsException("Unable to perform GET. " + ex.getMessage(), ex));
+        }
+    }
+
+    /**
+     * Streams the body of a non-blocking GET request to the channel as it arrives, a gzip or deflate body is
+     * decoded on the fly. The channel is written by an I/O dispatcher thread and is not closed.
+     *
+     * @param path        path
+     * @param headers     http headers
+     * @param params      http params
+     * @param credentials credentials
+     * @param target      channel receiving the decoded body
+     * @return future of the number of bytes written to the channel
+     */
+    public CompletableFuture<Long> getAsync(String path, Map<String, String> headers, Map<String, String> params, Credentials credentials, WritableByteChannel target) {
+        try {
+            return performRequestAsync(createGet(path, headers, params, credentials),
+                    () -> new ChannelConsumer(target), bytes -> bytes);
+        } catch (URISyntaxException ex) {
+            return failed(new WebToolsException("Unable to perform GET. " + ex.getMessage(), ex));
+        }
+    }
+
+    /**
+     * Streams the body of a GET request to the file through a fixed size buffer, the body is never held in memory.
+     *
+     * @param path   URL
+     * @param target file to create or replace, deleted if the download fails
+     * @return number of bytes written to the file
+     * @throws WebToolsException if the request fails or the response code is 300 or above
+     */
+    public long download(String path, Path target) throws WebToolsException {
+        return download(path, null, null, null, target);
+    }
+
+    /**
+     * @param path        path
+     * @param headers     http headers
+     * @param params      http params
+     * @param credentials credentials
+     * @param target      file to create or replace, deleted if the download fails
+     * @return number of bytes written to the file
+     * @throws WebToolsException if the request fails or the response code is 300 or above
+     * @see #download(String, Path)
+     */
+    public long download(String path, Map<String, String> headers, Map<String, String> params, Credentials credentials, Path target) throws WebToolsException {
+        try {
+            return execute(createGet(path, headers, params, credentials), response -> {
+                checkStatus(response);
+                try {
+                    return copy(response.getEntity(), target);
+                } catch (IOException | RuntimeException ex) {
+                    Files.deleteIfExists(target);
+                    throw ex;
+                }
+            });
+        } catch (URISyntaxException ex) {
+            throw new WebToolsException("Unable to perform GET. " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Hands out the body of a GET request as a stream tied to the connection lease. Closing the stream reads
+     * the rest of the body and returns the connection to the pool, the stream has to be closed.
+     *
+     * @param path        path
+     * @param headers     http headers
+     * @param params      http params
+     * @param credentials credentials
+     * @return decoded response body
+     * @throws WebToolsException if the request fails or the response code is 300 or above
+     */
+    public InputStream getStream(String path, Map<String, String> headers, Map<String, String> params, Credentials credentials) throws WebToolsException {
+        try {
+            HttpGet httpGet = createGet(path, headers, params, credentials);
+            return withRetry(httpGet, () -> openStream(httpGet));
+        } catch (URISyntaxException | IOException ex) {
+            throw toWebToolsException("GET", ex);
+        }
+    }
+
+    private InputStream openStream(HttpRequestBase httpRequest) throws IOException {
+        HttpClientContext context = HttpClientContext.create();
+        long started = System.nanoTime();
+        try {
+            CloseableHttpResponse response = httpClient.execute(httpRequest, context);
+            try {
+                checkStatus(response);
+                HttpEntity entity = response.getEntity();
+                InputStream content = entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+                return new FilterInputStream(content) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            response.close();
+                        }
+                    }
+                };
+            } catch (IOException | RuntimeException ex) {
+                response.close();
+                throw ex;
+            }
+        } finally {
+            recordRequest(httpRequest, context, started);
+        }
+    }
+
+    /**
+     * Executes the request and lets the handler process the response, the connection is released once the handler
+     * returns. The handler gets the decoded entity and is responsible for checking the response code.
+     *
+     * @param httpRequest request, the request config of this client is used unless the request has its own
+     * @param handler     response handler
+     * @return result of the handler
+     * @throws WebToolsException if the request or the handler fails
+     */
+    public <T> T execute(HttpRequestBase httpRequest, ResponseHandler<? extends T> handler) throws WebToolsException {
+        if (httpRequest.getConfig() == null) {
+            httpRequest.setConfig(requestConfig);
+        }
+        try {
+            return withRetry(httpRequest, () -> {
+                HttpClientContext context = HttpClientContext.create();
+                long started = System.nanoTime();
+                try {
+                    return httpClient.execute(httpRequest, handler, context);
+                } finally {
+                    recordRequest(httpRequest, context, started);
+                }
+            });
+        } catch (IOException ex) {
+            throw toWebToolsException(httpRequest.getMethod(), ex);
+        }
+    }
+
+    /**
+     * Performs the attempts of a blocking request allowed by the retry policy, sleeping between them.
+     */
+    private <T> T withRetry(HttpRequestBase httpRequest, Attempt<T> attempt) throws IOException {
+        for (int number = 1; ; number++) {
+            try {
+                T result = attempt.perform();
+                if (retryBudget != null) {
+                    retryBudget.deposit();
+                }
+                return result;
+            } catch (IOException ex) {
+                long delay = retryDelay(httpRequest, ex, number);
+                if (delay < 0) {
+                    throw ex;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+                httpRequest.reset();
+            }
+        }
+    }
+
+    /**
+     * @return delay before the next attempt or -1 if the request is not retried
+     */
+    private long retryDelay(HttpRequestBase httpRequest, Exception failure, int attempt) {
+        if (retryPolicy == null || !retryPolicy.isRetryable(httpRequest, failure, attempt)) {
+            return -1;
+        }
+        boolean allowed = retryBudget.withdraw();
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.httpRetry(httpRequest.getMethod(), route(httpRequest.getURI()), allowed);
+        }
+        if (!allowed) {
+            logger.warn("Retry budget is exhausted, {} is not retried", httpRequest);
+            return -1;
+        }
+        long delay = retryPolicy.delayNanos(attempt);
+        if (logger.isInfoEnabled()) {
+            logger.info("Retrying {} in {} ms after {}", httpRequest, TimeUnit.NANOSECONDS.toMillis(delay), failure.getMessage());
+        }
+        return delay;
+    }
+
+    private static long copy(HttpEntity entity, Path target) throws IOException {
+        long total = 0;
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (entity == null) {
+                return 0;
+            }
+            BufferPool pool = BufferPool.getInstance();
+            byte[] buffer = pool.acquireBytes();
+            try (InputStream in = entity.getContent()) {
+                ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                int count;
+                while ((count = in.read(buffer)) >= 0) {
+                    wrapped.clear().limit(count);
+                    while (wrapped.hasRemaining()) {
+                        out.write(wrapped);
+                    }
+                    total += count;
+                }
+            } finally {
+                pool.release(buffer);
+            }
+        }
+        return total;
+    }
+
+    private static void checkStatus(HttpResponse response) throws IOException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode >= 300) {
+            HttpEntity entity = response.getEntity();
+            throw new WebToolsException("Response code is " + statusCode + " result: "
+                    + (entity == null ? null : EntityUtils.toString(entity, getCharset(entity))), statusCode);
+        }
+    }
+
+    private HttpGet createGet(String path, Map<String, String> headers, Map<String, String> params, Credentials credentials) throws URISyntaxException {
+        HttpGet httpGet = new HttpGet(buildURI(path, params));
+        httpGet.setConfig(requestConfig);
+        addHeaders(httpGet, headers);
+        addCredentials(httpGet, credentials);
+        return httpGet;
+    }
+
     protected void addCredentials(HttpRequestBase httpRequest, Credentials credentials) {
         if (credentials == null) return;
         if (credentials instanceof UsernamePasswordCredentials) {
@@ -198,37 +548,237 @@ public class Web {
     }
 
     protected String performRequest(HttpClientContext context, HttpRequestBase httpRequest) throws IOException {
-        CloseableHttpResponse response = httpClient.execute(httpRequest, context);
-        if (logger.isInfoEnabled()) {
-            logger.info("Request to {}", httpRequest);
-            logger.info("Response {}", response.getStatusLine());
-        }
+        long started = System.nanoTime();
+        int statusCode = -1;
         try {
-            HttpEntity entity = response.getEntity();
-            if (entity != null) {
-                InputStream inStream = entity.getContent();
-                try (InputStreamReader isr = new InputStreamReader(inStream)) {
-                    int numCharsRead;
-                    char[] charArray = new char[1024];
-                    StringBuilder sb = new StringBuilder();
-                    while ((numCharsRead = isr.read(charArray)) > 0) {
-                        sb.append(charArray, 0, numCharsRead);
+            CloseableHttpResponse response = httpClient.execute(httpRequest, context);
+            statusCode = response.getStatusLine().getStatusCode();
+            if (logger.isInfoEnabled()) {
+                logger.info("Request to {}", httpRequest);
+                logger.info("Response {}", response.getStatusLine());
+            }
+            return readResponse(response);
+        } finally {
+            recordRequest(httpRequest, statusCode, started);
+            if (cache != null) {
+                cache.record(context);
+            }
+        }
+    }
+
+    /**
+     * @param httpRequest request
+     * @param consumers   creates the consumer of the response of every attempt, called on the I/O dispatcher thread
+     * @param mapper      maps the consumer result to the future value
+     * @return future completed with the mapped result or failed with {@link WebToolsException}
+     */
+    protected <T, R> CompletableFuture<R> performRequestAsync(HttpRequestBase httpRequest, Supplier<? extends HttpAsyncResponseConsumer<T>> consumers, ResultMapper<T, R> mapper) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        AtomicReference<Future<T>> request = new AtomicReference<>();
+        result.whenComplete((value, ex) -> {
+            Future<T> current = request.get();
+            if (result.isCancelled() && current != null) {
+                current.cancel(true);
+            }
+        });
+        attemptAsync(httpRequest, consumers, mapper, result, request, 1);
+        return result;
+    }
+
+    /**
+     * Sends an attempt of an async request, a retry is scheduled without blocking a thread during the delay.
+     */
+    private <T, R> void attemptAsync(HttpRequestBase httpRequest, Supplier<? extends HttpAsyncResponseConsumer<T>> consumers,
+                                     ResultMapper<T, R> mapper, CompletableFuture<R> result, AtomicReference<Future<T>> request, int attempt) {
+        if (result.isDone()) {
+            return;
+        }
+        long started = System.nanoTime();
+        HttpClientContext context = HttpClientContext.create();
+        HttpAsyncResponseConsumer<T> consumer = consumers.get();
+        FutureCallback<T> callback = new FutureCallback<T>() {
+            @Override
+            public void completed(T value) {
+                if (logger.isInfoEnabled()) {
+                    logger.info("Request to {}", httpRequest);
+                    logger.info("Response {}", context.getResponse().getStatusLine());
+                }
+                recordRequest(httpRequest, context, started);
+                try {
+                    R mapped = mapper.map(value);
+                    if (retryBudget != null) {
+                        retryBudget.deposit();
                     }
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    if (statusCode >= 300) {
-                        throw new WebToolsException("Response code is " + statusCode + " result: " + sb.toString());
+                    result.complete(mapped);
+                } catch (IOException | RuntimeException ex) {
+                    retryOrFail(toWebToolsException(httpRequest.getMethod(), ex));
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                recordRequest(httpRequest, context, started);
+                retryOrFail(toWebToolsException(httpRequest.getMethod(), ex));
+            }
+
+            @Override
+            public void cancelled() {
+                recordRequest(httpRequest, context, started);
+                result.cancel(false);
+            }
+
+            private void retryOrFail(WebToolsException failure) {
+                // a body partly written to the target channel can't be taken back
+                boolean written = consumer instanceof ChannelConsumer && ((ChannelConsumer) consumer).isWritten();
+                long delay = written ? -1 : retryDelay(httpRequest, failure, attempt);
+                if (delay < 0) {
+                    result.completeExceptionally(failure);
+                } else {
+                    RetryPolicy.schedule(() -> attemptAsync(httpRequest, consumers, mapper, result, request, attempt + 1), delay);
+                }
+            }
+        };
+        try {
+            request.set(asyncClient().execute(HttpAsyncMethods.create(httpRequest), consumer, context, callback));
+        } catch (RuntimeException ex) {
+            // e.g. the client is closed, thrown on the caller or the retry scheduler thread
+            result.completeExceptionally(toWebToolsException(httpRequest.getMethod(), ex));
+            return;
+        }
+        if (result.isCancelled()) {
+            request.get().cancel(true);
+        }
+    }
+
+    private CloseableHttpAsyncClient asyncClient() {
+        CloseableHttpAsyncClient client = asyncClient;
+        if (client == null) {
+            synchronized (this) {
+                client = asyncClient;
+                if (client == null) {
+                    HttpAsyncClientBuilder clientBuilder = HttpAsyncClients.custom()
+                            .setConnectionManager(pool.getAsyncConnectionManager())
+                            .setConnectionManagerShared(true)
+                            .setRedirectStrategy(new LaxRedirectStrategy())
+                            .addInterceptorFirst(ACCEPT_ENCODING);
+                    if (keepAliveStrategy != null) {
+                        clientBuilder.setKeepAliveStrategy(keepAliveStrategy);
                     }
-                    return sb.toString();
-                } finally {
-                    inStream.close();
+                    client = clientBuilder.build();
+                    client.start();
+                    asyncClient = client;
                 }
             }
-            return null;
+        }
+        return client;
+    }
+
+    private static WebToolsException toWebToolsException(String method, Exception ex) {
+        return ex instanceof WebToolsException ? (WebToolsException) ex
+                : new WebToolsException("Unable to perform " + method + ". " + ex.getMessage(), ex);
+    }
+
+    private static <T> CompletableFuture<T> failed(Exception ex) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(ex);
+        return result;
+    }
+
+    /**
+     * @param contentEncoding Content-Encoding header, may be null
+     * @return gzip, deflate or null if the content is not encoded with a supported coding
+     */
+    static String getContentCoding(Header contentEncoding) {
+        if (contentEncoding != null) {
+            for (HeaderElement codec : contentEncoding.getElements()) {
+                if (codec.getName().equalsIgnoreCase("gzip")) {
+                    return "gzip";
+                }
+                if (codec.getName().equalsIgnoreCase("deflate")) {
+                    return "deflate";
+                }
+            }
+        }
+        return null;
+    }
+
+    private String readResponse(CloseableHttpResponse response) throws IOException {
+        try {
+            return readEntity(response);
         } finally {
             response.close();
         }
     }
 
+    /**
+     * @return charset of the Content-Type header, UTF-8 if it is missing or not supported
+     */
+    static Charset getCharset(HttpEntity entity) {
+        try {
+            ContentType contentType = ContentType.get(entity);
+            if (contentType != null && contentType.getCharset() != null) {
+                return contentType.getCharset();
+            }
+        } catch (ParseException | UnsupportedCharsetException ex) {
+            logger.warn("Unable to get response charset, UTF-8 is used. {}", ex.getMessage());
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private String readBufferedEntity(HttpResponse response) throws IOException {
+        try {
+            CONTENT_DECODER.process(response, null);
+        } catch (HttpException ex) {
+            throw new IOException(ex);
+        }
+        return readEntity(response);
+    }
+
+    private String readEntity(HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            InputStream inStream = entity.getContent();
+            BufferPool pool = BufferPool.getInstance();
+            char[] charArray = pool.acquireChars();
+            try (InputStreamReader isr = new InputStreamReader(inStream, getCharset(entity));
+                 PooledStringWriter sb = new PooledStringWriter(pool)) {
+                int numCharsRead;
+                while ((numCharsRead = isr.read(charArray)) > 0) {
+                    sb.write(charArray, 0, numCharsRead);
+                }
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode >= 300) {
+                    throw new WebToolsException("Response code is " + statusCode + " result: " + sb.toString(), statusCode);
+                }
+                return sb.toString();
+            } finally {
+                pool.release(charArray);
+                inStream.close();
+            }
+        }
+        return null;
+    }
+
+    private void recordRequest(HttpRequestBase httpRequest, HttpClientContext context, long started) {
+        HttpResponse response = context.getResponse();
+        recordRequest(httpRequest, response == null ? -1 : response.getStatusLine().getStatusCode(), started);
+        if (cache != null) {
+            cache.record(context);
+        }
+    }
+
+    private void recordRequest(HttpRequestBase httpRequest, int statusCode, long started) {
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.httpRequest(httpRequest.getMethod(), route(httpRequest.getURI()), statusCode, System.nanoTime() - started);
+            pool.reportStats();
+        }
+    }
+
+    private static String route(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() < 0 ? "" : ":" + uri.getPort());
+    }
+
     public void setRequestConfig(RequestConfig requestConfig) {
         this.requestConfig = requestConfig;
     }
@@ -242,5 +792,245 @@ public class Web {
                 logger.error("Unable to shutdown httClient ", ex);
             }
         }
+        if (asyncClient != null) {
+            try {
+                asyncClient.close();
+            } catch (IOException ex) {
+                logger.error("Unable to shutdown async httpClient ", ex);
+            }
+        }
+        if (ownsPool) {
+            pool.close();
+        }
+    }
+
+    public static class Builder {
+        private final WebPool.Builder poolBuilder = WebPool.builder();
+        private WebPool pool;
+        private int timeout = DEFAULT_TIMEOUT;
+        private long keepAliveMillis = -1;
+        private WebCache cache;
+        private RetryPolicy retryPolicy;
+
+        private Builder() {
+        }
+
+        /**
+         * @param timeout connect, socket and connection lease timeout in milliseconds, {@link #DEFAULT_TIMEOUT} by default
+         * @return this builder
+         */
+        public Builder timeout(int timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * @param keepAlive max time an idle connection is kept for reuse, shortened by the Keep-Alive header
+         *                  of the server; by default only the header limits it
+         * @param unit      unit of the keep-alive time
+         * @return this builder
+         */
+        public Builder keepAlive(long keepAlive, TimeUnit unit) {
+            this.keepAliveMillis = unit.toMillis(keepAlive);
+            return this;
+        }
+
+        /**
+         * @param cache response cache of the blocking requests, none by default
+         * @return this builder
+         */
+        public Builder cache(WebCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * @param retryPolicy retry rules, the client gets its own retry budget; no retries by default
+         * @return this builder
+         */
+        public Builder retry(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * @param pool pool shared with other clients and left open by {@link Web#close()}, the pool settings
+         *             of this builder are ignored
+         * @return this builder
+         */
+        public Builder pool(WebPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * @param name name of the own pool reported to the metrics, unique "web-N" by default
+         * @return this builder
+         * @see WebPool.Builder#name(String)
+         */
+        public Builder name(String name) {
+            poolBuilder.name(name);
+            return this;
+        }
+
+        /**
+         * @param maxTotal max number of connections of the own pool, 200 by default
+         * @return this builder
+         * @see WebPool.Builder#maxTotal(int)
+         */
+        public Builder maxTotal(int maxTotal) {
+            poolBuilder.maxTotal(maxTotal);
+            return this;
+        }
+
+        /**
+         * @param maxPerRoute max number of connections to a host of the own pool, 20 by default
+         * @return this builder
+         * @see WebPool.Builder#maxPerRoute(int)
+         */
+        public Builder maxPerRoute(int maxPerRoute) {
+            poolBuilder.maxPerRoute(maxPerRoute);
+            return this;
+        }
+
+        /**
+         * @param host        scheme://host[:port] such as "https://api.example.com"
+         * @param maxPerRoute max number of connections to the host
+         * @return this builder
+         * @see WebPool.Builder#maxPerRoute(String, int)
+         */
+        public Builder maxPerRoute(String host, int maxPerRoute) {
+            poolBuilder.maxPerRoute(host, maxPerRoute);
+            return this;
+        }
+
+        /**
+         * @param timeToLive max lifetime of a connection of the own pool, unlimited by default
+         * @param unit       unit of the time to live
+         * @return this builder
+         * @see WebPool.Builder#timeToLive(long, TimeUnit)
+         */
+        public Builder timeToLive(long timeToLive, TimeUnit unit) {
+            poolBuilder.timeToLive(timeToLive, unit);
+            return this;
+        }
+
+        /**
+         * @param validateAfterInactivity idle time after which a connection is checked before it is reused,
+         *                                2 seconds by default
+         * @param unit                    unit of the idle time
+         * @return this builder
+         * @see WebPool.Builder#validateAfterInactivity(long, TimeUnit)
+         */
+        public Builder validateAfterInactivity(long validateAfterInactivity, TimeUnit unit) {
+            poolBuilder.validateAfterInactivity(validateAfterInactivity, unit);
+            return this;
+        }
+
+        /**
+         * @param maxIdle idle time after which the background evictor closes a connection of the own pool,
+         *                no evictor by default, it is stopped by {@link Web#close()}
+         * @param unit    unit of the idle time
+         * @return this builder
+         * @see WebPool.Builder#evictIdleAfter(long, TimeUnit)
+         */
+        public Builder evictIdleAfter(long maxIdle, TimeUnit unit) {
+            poolBuilder.evictIdleAfter(maxIdle, unit);
+            return this;
+        }
+
+        public Web build() {
+            return new Web(this);
+        }
+    }
+
+    /**
+     * Performs one attempt of a blocking request.
+     */
+    @FunctionalInterface
+    private interface Attempt<T> {
+        T perform() throws IOException;
+    }
+
+    /**
+     * Maps the result of a response consumer, called on the I/O dispatcher thread.
+     */
+    @FunctionalInterface
+    protected interface ResultMapper<T, R> {
+        R map(T value) throws IOException;
+    }
+
+    /**
+     * Writes the body to a channel as it arrives, decoding gzip and deflate. The body of an error response
+     * is collected for the exception message instead.
+     */
+    private static class ChannelConsumer extends AsyncByteConsumer<Long> {
+        private final WritableByteChannel target;
+        private ByteArrayOutputStream errorBody;
+        private Charset errorCharset;
+        private WritableByteChannel sink;
+        private DecodingChannel decoder;
+        private int statusCode;
+        private long bytes;
+
+        ChannelConsumer(WritableByteChannel target) {
+            this.target = target;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) {
+            statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode >= 300) {
+                errorBody = new ByteArrayOutputStream();
+                errorCharset = getCharset(response.getEntity());
+                sink = Channels.newChannel(errorBody);
+            } else {
+                sink = target;
+            }
+            String coding = getContentCoding(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+            if (coding != null) {
+                decoder = new DecodingChannel(sink, "gzip".equals(coding));
+            }
+        }
+
+        @Override
+        protected void onByteReceived(ByteBuffer buf, IOControl ioControl) throws IOException {
+            if (decoder != null) {
+                decoder.write(buf);
+            } else {
+                bytes += buf.remaining();
+                while (buf.hasRemaining()) {
+                    sink.write(buf);
+                }
+            }
+        }
+
+        /**
+         * @return true if a part of the body reached the target channel
+         */
+        boolean isWritten() {
+            return sink == target && (bytes > 0 || decoder != null && decoder.getDecoded() > 0);
+        }
+
+        @Override
+        protected Long buildResult(HttpContext context) throws IOException {
+            if (decoder != null) {
+                decoder.finish();
+                bytes = decoder.getDecoded();
+            }
+            if (errorBody != null) {
+                throw new WebToolsException("Response code is " + statusCode + " result: "
+                        + new String(errorBody.toByteArray(), errorCharset), statusCode);
+            }
+            return bytes;
+        }
+
+        @Override
+        protected void releaseResources() {
+            super.releaseResources();
+            if (decoder != null) {
+                decoder.close();
+            }
+        }
     }
 }
@@ -0,0 +1,304 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+package com.epam.dep.esp.common.web;
+
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
+import org.apache.http.Header;
+import org.apache.http.client.cache.CacheResponseStatus;
+import org.apache.http.client.cache.HttpCacheContext;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP response cache of {@link Web}, opted in with {@link Web.Builder#cache(WebCache)}. Responses are cached
+ * and revalidated with If-None-Match/If-Modified-Since following the HTTP caching rules (RFC 7234), bodies
+ * are kept in a size bounded LRU memory tier and an optional disk tier. Concurrent identical GET requests
+ * share one call, the first caller performs it and the others wait for its result.
+ * <pre>
+ * WebCache cache = WebCache.builder().maxMemory(64 * 1024 * 1024).directory(Paths.get("/tmp/web-cache")).build();
+ * Web web = Web.builder().cache(cache).build();
+ * </pre>
+ * A cache may be shared by several {@link Web} instances and is closed by its owner.
+ * The cache applies to the blocking requests, the async ones always go to the network.
+ */
+public class WebCache implements Closeable {
+    private final CacheConfig config;
+    private final TieredCacheStorage storage;
+    private final ConcurrentMap<List<String>, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    private WebCache(Builder builder) {
+        long maxObjectSize = builder.directory == null ? builder.maxMemoryObjectSize
+                : Math.max(builder.maxMemoryObjectSize, builder.maxDiskObjectSize);
+        this.config = CacheConfig.custom()
+                .setMaxCacheEntries(builder.maxEntries)
+                .setMaxObjectSize(maxObjectSize)
+                .setSharedCache(builder.shared)
+                .build();
+        this.storage = new TieredCacheStorage(builder.maxEntries, builder.maxMemory, builder.maxMemoryObjectSize,
+                builder.directory == null ? null : builder.directory.toFile(), builder.maxDisk);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return responses served from the cache without contacting the server
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return responses fetched from the server
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return responses served from the cache after the server confirmed them with 304 Not Modified
+     */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /**
+     * @return requests answered with the result of an identical concurrent request
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public int getEntries() {
+        return storage.getEntries();
+    }
+
+    /**
+     * @return size of the bodies kept on the heap
+     */
+    public long getMemoryBytes() {
+        return storage.getMemoryBytes();
+    }
+
+    /**
+     * @return size of the bodies kept on the disk
+     */
+    public long getDiskBytes() {
+        return storage.getDiskBytes();
+    }
+
+    /**
+     * @return entries removed to stay within the limits
+     */
+    public long getEvictions() {
+        return storage.getEvictions();
+    }
+
+    /**
+     * Removes all entries and deletes the files of the disk tier.
+     */
+    @Override
+    public void close() {
+        storage.clear();
+    }
+
+    CachingHttpClientBuilder clientBuilder() {
+        return CachingHttpClientBuilder.create()
+                .setCacheConfig(config)
+                .setHttpCacheStorage(storage)
+                .setResourceFactory(storage);
+    }
+
+    /**
+     * Counts how the cache answered the request.
+     *
+     * @param context context of an executed request
+     */
+    void record(HttpContext context) {
+        CacheResponseStatus status = HttpCacheContext.adapt(context).getCacheResponseStatus();
+        if (status == CacheResponseStatus.CACHE_HIT) {
+            record(hits, "hit");
+        } else if (status == CacheResponseStatus.VALIDATED) {
+            record(revalidations, "validated");
+        } else if (status == CacheResponseStatus.CACHE_MISS) {
+            record(misses, "miss");
+        }
+    }
+
+    /**
+     * Performs the request unless an identical one is in flight, in that case waits for its result.
+     *
+     * @param httpRequest request with all headers set
+     * @param call        performs the request
+     * @return response body
+     * @throws IOException if the request fails
+     */
+    String coalesce(HttpRequestBase httpRequest, RequestCall call) throws IOException {
+        List<String> key = new ArrayList<>();
+        key.add(httpRequest.getMethod());
+        key.add(httpRequest.getURI().toString());
+        for (Header header : httpRequest.getAllHeaders()) {
+            key.add(header.getName() + ": " + header.getValue());
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CompletableFuture<String> leader = inFlight.putIfAbsent(key, result);
+        if (leader != null) {
+            record(coalesced, "coalesced");
+            return await(leader);
+        }
+        try {
+            String body = call.perform();
+            result.complete(body);
+            return body;
+        } catch (IOException | RuntimeException ex) {
+            result.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, result);
+        }
+    }
+
+    private static String await(CompletableFuture<String> leader) throws IOException {
+        try {
+            return leader.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WebToolsException("Interrupted while waiting for an identical request", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw new WebToolsException(cause.getMessage(), cause);
+        }
+    }
+
+    private static void record(LongAdder counter, String result) {
+        counter.increment();
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.httpCache(result);
+        }
+    }
+
+    /**
+     * Performs a request coalesced by {@link #coalesce(HttpRequestBase, RequestCall)}.
+     */
+    @FunctionalInterface
+    interface RequestCall {
+        String perform() throws IOException;
+    }
+
+    public static class Builder {
+        private int maxEntries = 1000;
+        private long maxMemory = 32 * 1024 * 1024;
+        private long maxMemoryObjectSize = 1024 * 1024;
+        private Path directory;
+        private long maxDisk = 512 * 1024 * 1024;
+        private long maxDiskObjectSize = 64 * 1024 * 1024;
+        private boolean shared = true;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxEntries max number of cached responses, 1000 by default
+         * @return this builder
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param maxMemory max size of the bodies kept on the heap, 32 MB by default
+         * @return this builder
+         */
+        public Builder maxMemory(long maxMemory) {
+            this.maxMemory = maxMemory;
+            return this;
+        }
+
+        /**
+         * @param maxMemoryObjectSize max size of a body kept on the heap, bigger ones go to the disk tier
+         *                            or are not cached without it, 1 MB by default
+         * @return this builder
+         */
+        public Builder maxMemoryObjectSize(long maxMemoryObjectSize) {
+            this.maxMemoryObjectSize = maxMemoryObjectSize;
+            return this;
+        }
+
+        /**
+         * @param directory existing directory of the disk tier, no disk tier by default
+         * @return this builder
+         */
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * @param maxDisk max size of the bodies kept on the disk, 512 MB by default
+         * @return this builder
+         */
+        public Builder maxDisk(long maxDisk) {
+            this.maxDisk = maxDisk;
+            return this;
+        }
+
+        /**
+         * @param maxDiskObjectSize max size of a body kept on the disk, 64 MB by default
+         * @return this builder
+         */
+        public Builder maxDiskObjectSize(long maxDiskObjectSize) {
+            this.maxDiskObjectSize = maxDiskObjectSize;
+            return this;
+        }
+
+        /**
+         * Entries are keyed by the request URI only, so a private cache serves the response of one user to everybody.
+         *
+         * @param shared true by default, the cache doesn't store responses to authorized requests unless they are
+         *               explicitly public, nor responses marked private; false only if all requests through the cache
+         *               carry the same credentials or none
+         * @return this builder
+         */
+        public Builder shared(boolean shared) {
+            this.shared = shared;
+            return this;
+        }
+
+        public WebCache build() {
+            return new WebCache(this);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+package com.epam.dep.esp.common.web;
+
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.protocol.HttpAsyncRequestExecutor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection pool of {@link Web}. A pool given to {@link Web.Builder#pool(WebPool)} is shared by the clients built
+ * with it, closing a client leaves the pool open, so scripts creating many clients reuse the same sockets.
+ * <pre>
+ * WebPool pool = WebPool.builder().maxTotal(500).maxPerRoute("https://api.example.com", 100).build();
+ * Web web = Web.builder().pool(pool).build();
+ * </pre>
+ * Blocking and async requests use separate connections, each kind is limited by the settings of the pool.
+ * The async connections and the I/O reactor serving them are created by the first async request.
+ * Expired connections and connections idle longer than {@link Builder#evictIdleAfter(long, TimeUnit)}
+ * are closed by a background daemon thread.
+ */
+public class WebPool implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WebPool.class);
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    private static WebPool defaultPool;
+
+    private final String name;
+    private final InstrumentedConnectionManager cm;
+    private volatile InstrumentedNHttpConnectionManager asyncCm;
+    private final Map<HttpRoute, Integer> routes;
+    private final long timeToLiveMillis;
+    private final long maxIdleMillis;
+    private final Thread evictor;
+    private final int maxTotal;
+    private final int maxPerRoute;
+    private boolean closed;
+
+    private WebPool(Builder builder) {
+        // every pool reports its own gauges, so the default names differ
+        this.name = builder.name == null ? Web.POOL_NAME + "-" + COUNTER.incrementAndGet() : builder.name;
+        this.cm = new InstrumentedConnectionManager(name, builder.timeToLiveMillis);
+        this.maxTotal = builder.maxTotal;
+        this.maxPerRoute = builder.maxPerRoute;
+        this.routes = new LinkedHashMap<>(builder.routes);
+        this.timeToLiveMillis = builder.timeToLiveMillis;
+        this.maxIdleMillis = builder.maxIdleMillis;
+        cm.setMaxTotal(builder.maxTotal);
+        cm.setDefaultMaxPerRoute(builder.maxPerRoute);
+        for (Map.Entry<HttpRoute, Integer> route : routes.entrySet()) {
+            cm.setMaxPerRoute(route.getKey(), route.getValue());
+        }
+        cm.setValidateAfterInactivity(builder.validateAfterInactivityMillis);
+        if (maxIdleMillis > 0) {
+            evictor = daemonThreads("gmp-web-evictor-" + name).newThread(this::evict);
+            evictor.start();
+        } else {
+            evictor = null;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return pool with the default limits shared by the whole JVM, connections idle for a minute are evicted,
+     * it is never closed
+     */
+    public static synchronized WebPool getDefault() {
+        if (defaultPool == null) {
+            defaultPool = builder().evictIdleAfter(1, TimeUnit.MINUTES).build();
+        }
+        return defaultPool;
+    }
+
+    /**
+     * @return name the pool is reported under to the metrics
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    InstrumentedConnectionManager getConnectionManager() {
+        return cm;
+    }
+
+    /**
+     * @return connection manager of the async requests, created with its I/O reactor on the first call
+     */
+    synchronized InstrumentedNHttpConnectionManager getAsyncConnectionManager() {
+        if (closed) {
+            throw new IllegalStateException("Connection pool " + name + " is closed");
+        }
+        if (asyncCm == null) {
+            try {
+                DefaultConnectingIOReactor reactor = new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT,
+                        daemonThreads("gmp-web-io-" + name));
+                InstrumentedNHttpConnectionManager manager = new InstrumentedNHttpConnectionManager(name, reactor, timeToLiveMillis);
+                manager.setMaxTotal(maxTotal);
+                manager.setDefaultMaxPerRoute(maxPerRoute);
+                for (Map.Entry<HttpRoute, Integer> route : routes.entrySet()) {
+                    manager.setMaxPerRoute(route.getKey(), route.getValue());
+                }
+                // the clients share the manager, so none of them runs the reactor
+                daemonThreads("gmp-web-reactor-" + name).newThread(() -> {
+                    try {
+                        manager.execute(new PoolIODispatch(new HttpAsyncRequestExecutor()));
+                    } catch (IOException | RuntimeException e) {
+                        logger.error("I/O reactor of pool {} terminated abnormally", name, e);
+                    }
+                }).start();
+                asyncCm = manager;
+            } catch (IOReactorException e) {
+                throw new IllegalStateException("Unable to start I/O reactor of pool " + name, e);
+            }
+        }
+        return asyncCm;
+    }
+
+    /**
+     * Reports the connections of both the blocking and the async requests.
+     */
+    void reportStats() {
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            PoolStats stats = cm.getTotalStats();
+            int leased = stats.getLeased();
+            int available = stats.getAvailable();
+            int pending = stats.getPending();
+            InstrumentedNHttpConnectionManager async = asyncCm;
+            if (async != null) {
+                PoolStats asyncStats = async.getTotalStats();
+                leased += asyncStats.getLeased();
+                available += asyncStats.getAvailable();
+                pending += asyncStats.getPending();
+            }
+            metrics.httpPoolStats(name, leased, available, pending);
+        }
+    }
+
+    /**
+     * Stops the evictor and closes all connections, the clients using the pool can't be used afterwards.
+     */
+    @Override
+    public void close() {
+        InstrumentedNHttpConnectionManager async;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            async = asyncCm;
+        }
+        if (evictor != null) {
+            evictor.interrupt();
+        }
+        cm.shutdown();
+        if (async != null) {
+            try {
+                async.shutdown();
+            } catch (IOException e) {
+                logger.error("Unable to shutdown I/O reactor of pool {}", name, e);
+            }
+        }
+        Metrics metrics = MetricsRegistry.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.httpPoolClosed(name);
+        }
+    }
+
+    private void evict() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                TimeUnit.MILLISECONDS.sleep(maxIdleMillis);
+                cm.closeExpiredConnections();
+                cm.closeIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS);
+                InstrumentedNHttpConnectionManager async = asyncCm;
+                if (async != null) {
+                    async.closeExpiredConnections();
+                    async.closeIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (InterruptedException e) {
+            // the pool is closed
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static class Builder {
+        private String name;
+        private int maxTotal = 200;
+        private int maxPerRoute = 20;
+        private final Map<HttpRoute, Integer> routes = new LinkedHashMap<>();
+        private long timeToLiveMillis = -1;
+        private int validateAfterInactivityMillis = 2000;
+        private long maxIdleMillis;
+
+        private Builder() {
+        }
+
+        /**
+         * @param name pool name reported to the metrics, unique "web-N" by default; pools with the same name
+         *             overwrite each other's gauges
+         * @return this builder
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * @param maxTotal max number of connections, 200 by default
+         * @return this builder
+         */
+        public Builder maxTotal(int maxTotal) {
+            this.maxTotal = maxTotal;
+            return this;
+        }
+
+        /**
+         * @param maxPerRoute max number of connections to a host without its own limit, 20 by default
+         * @return this builder
+         */
+        public Builder maxPerRoute(int maxPerRoute) {
+            this.maxPerRoute = maxPerRoute;
+            return this;
+        }
+
+        /**
+         * @param host        scheme://host[:port] such as "https://api.example.com"
+         * @param maxPerRoute max number of connections to the host
+         * @return this builder
+         */
+        public Builder maxPerRoute(String host, int maxPerRoute) {
+            HttpHost target = HttpHost.create(host);
+            try {
+                int port = DefaultSchemePortResolver.INSTANCE.resolve(target);
+                HttpHost resolved = new HttpHost(target.getHostName(), port, target.getSchemeName());
+                routes.put(new HttpRoute(resolved, null, "https".equalsIgnoreCase(target.getSchemeName())), maxPerRoute);
+            } catch (UnsupportedSchemeException e) {
+                throw new IllegalArgumentException("Unsupported scheme: " + host, e);
+            }
+            return this;
+        }
+
+        /**
+         * @param timeToLive max lifetime of a connection, unlimited by default
+         * @param unit       unit of the time to live
+         * @return this builder
+         */
+        public Builder timeToLive(long timeToLive, TimeUnit unit) {
+            this.timeToLiveMillis = unit.toMillis(timeToLive);
+            return this;
+        }
+
+        /**
+         * @param validateAfterInactivity idle time after which a connection of a blocking request is checked before
+         *                                it is reused, 2 seconds by default; the I/O reactor notices closed async
+         *                                connections by itself
+         * @param unit                    unit of the idle time
+         * @return this builder
+         */
+        public Builder validateAfterInactivity(long validateAfterInactivity, TimeUnit unit) {
+            this.validateAfterInactivityMillis = (int) Math.min(unit.toMillis(validateAfterInactivity), Integer.MAX_VALUE);
+            return this;
+        }
+
+        /**
+         * @param maxIdle idle time after which the background evictor closes a connection, 0 by default
+         *                for no evictor, the pool has to be closed to stop it
+         * @param unit    unit of the idle time
+         * @return this builder
+         */
+        public Builder evictIdleAfter(long maxIdle, TimeUnit unit) {
+            this.maxIdleMillis = unit.toMillis(maxIdle);
+            return this;
+        }
+
+        public WebPool build() {
+            return new WebPool(this);
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.epam.dep.esp.common.web;
 import java.net.ConnectException;
 
 public class WebToolsException extends ConnectException {
+    private int statusCode = -1;
+
     public WebToolsException() {
     }
 
@@ -25,13 +27,36 @@ public class WebToolsException extends ConnectException {
         super(message);
     }
 
+    /**
+     * @param message message
+     * @param cause   cause, the response code of a WebToolsException cause is kept
+     */
     public WebToolsException(String message, Throwable cause) {
         super(message);
         initCause(cause);
+        if (cause instanceof WebToolsException) {
+            statusCode = ((WebToolsException) cause).getStatusCode();
+        }
     }
 
     public WebToolsException(Throwable cause) {
         initCause(cause);
     }
 
+    /**
+     * @param message    message
+     * @param statusCode response code of the failed request
+     */
+    public WebToolsException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return response code of the failed request or -1 if no response was received
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
 }
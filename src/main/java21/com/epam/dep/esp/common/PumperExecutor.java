@@ -0,0 +1,50 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the blocking readers of process streams, Java 21 variant of the multi-release JAR. Up to
+ * {@value #MAX_THREADS_PROPERTY} (256 by default) readers run on virtual threads, a reader beyond the bound gets
+ * a platform thread of its own, so readers never wait for each other.
+ * <p>
+ * A pipe read is not a socket read, it blocks the carrier of the virtual thread and the scheduler compensates with
+ * an extra carrier, up to {@code jdk.virtualThreadScheduler.maxPoolSize} (256 by default). Unbounded virtual readers
+ * would queue for a carrier beyond that while their processes block on full pipes; keep the property at or below
+ * the carrier limit. Below the bound the virtual readers save the stacks and the start-up of platform threads.
+ */
+final class PumperExecutor {
+    static final String MAX_THREADS_PROPERTY = "gmp.process.pumperThreads";
+    private static final ThreadFactory VIRTUAL = Thread.ofVirtual().name("gmp-pumper-", 1).factory();
+    private static final ThreadFactory OVERFLOW = Thread.ofPlatform().name("gmp-pumper-overflow-", 1).daemon().factory();
+    // the pool only bounds the number of virtual readers, an idle virtual worker costs next to nothing
+    private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(0, Integer.getInteger(MAX_THREADS_PROPERTY, 256),
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(), VIRTUAL,
+            // a queued reader could deadlock a process blocked on a full pipe
+            (runnable, executor) -> OVERFLOW.newThread(runnable).start());
+
+    private PumperExecutor() {
+    }
+
+    static ExecutorService get() {
+        return EXECUTOR;
+    }
+}
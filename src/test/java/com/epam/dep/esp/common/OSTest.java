@@ -18,9 +18,26 @@ package com.epam.dep.esp.common;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 public class OSTest {
@@ -48,4 +65,232 @@ public class OSTest {
         testObj = OS.getOs();
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testLineDecoder() throws IOException {
+        byte[] content = "one\r\ntwo\rthree\n\nfour".getBytes(StandardCharsets.UTF_8);
+        BufferPool pool = new BufferPool(4, 2);
+        List<String> lines = new ArrayList<>();
+        LineDecoder decoder = new LineDecoder(StandardCharsets.UTF_8, pool);
+        ByteArrayInputStream in = new ByteArrayInputStream(content);
+        while (decoder.read(in, Integer.MAX_VALUE, lines::add) >= 0) {
+            // the decoder passes completed lines to the consumer
+        }
+        decoder.release();
+        assertEquals(Arrays.asList("one", "two", "three", "", "four"), lines);
+
+        try (PooledStringWriter writer = new PooledStringWriter(pool)) {
+            writer.write("pooled segments");
+            assertEquals("pooled segments", writer.toString());
+        }
+        // one byte buffer and at most two char buffers are kept, the writer reused the decoder's char buffer
+        assertEquals(3, pool.getPooled());
+        assertEquals(1, pool.getHits());
+    }
+
+    @Test
+    public void testExecAsync() throws Exception {
+        List<String> command = testObj == OS.win
+                ? Arrays.asList("cmd", "/c", "echo out& echo err 1>&2")
+                : Arrays.asList("/bin/bash", "-c", "echo out; echo err 1>&2");
+        ProcessResult result = testObj.execAsync(command, ExecOptions.builder().homeFolder(".").timeout(10, TimeUnit.SECONDS).build())
+                .get(20, TimeUnit.SECONDS);
+        assertEquals(Integer.valueOf(0), result.getExitCode());
+        assertEquals("out", result.getStdout().get(0).trim());
+        assertEquals("err", result.getStderr().get(0).trim());
+
+        if (testObj != OS.win) {
+            ProcessResult timedOut = testObj.execAsync(Arrays.asList("/bin/bash", "-c", "sleep 10"),
+                    ExecOptions.builder().timeout(100, TimeUnit.MILLISECONDS).build()).get(20, TimeUnit.SECONDS);
+            assertTrue(timedOut.isTimedOut());
+
+            ProcessExecution execution = testObj.execAsync(Arrays.asList("/bin/bash", "-c", "sleep 10 & wait"),
+                    ExecOptions.builder().gracePeriod(0, TimeUnit.SECONDS).build());
+            assertTrue(execution.kill());
+            assertEquals(Termination.KILLED, execution.get(20, TimeUnit.SECONDS).getTermination());
+        }
+    }
+
+    @Test
+    public void testExecStreaming() throws Exception {
+        if (testObj == OS.win) {
+            return;
+        }
+        List<String> streamed = Collections.synchronizedList(new ArrayList<>());
+        ProcessResult result = testObj.execCommandLine(Arrays.asList("/bin/bash", "-c", "seq 1 1000; echo failed 1>&2"),
+                ExecOptions.builder().stdout(streamed::add).tail(3, Long.MAX_VALUE).build());
+        assertEquals(Integer.valueOf(0), result.getExitCode());
+        assertEquals(Termination.EXITED, result.getTermination());
+        assertEquals(1000, streamed.size());
+        assertEquals(Arrays.asList("998", "999", "1000"), result.getStdout());
+        assertEquals(997, result.getDroppedStdout());
+        assertEquals(Collections.singletonList("failed"), result.getStderr());
+
+        // the output beyond the pipe buffer is still read after the consumer failed, the process is not timed out
+        long started = System.nanoTime();
+        try {
+            testObj.execCommandLine(Arrays.asList("/bin/bash", "-c", "seq 1 100000"), ExecOptions.builder()
+                    .stdout(line -> {
+                        throw new IllegalStateException(line);
+                    }).timeout(10, TimeUnit.SECONDS).build());
+            fail("Consumer failure expected");
+        } catch (IllegalStateException e) {
+            assertEquals("1", e.getMessage());
+        }
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testExecAsyncBlockingConsumer() throws Exception {
+        if (testObj == OS.win) {
+            return;
+        }
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> streamed = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ProcessExecution blocked = testObj.execAsync(Arrays.asList("/bin/bash", "-c", "seq 1 5000"),
+                    ExecOptions.builder().executor(executor).stdout(line -> {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        streamed.add(line);
+                    }).build());
+            // the blocked consumer must not delay the timeout of another process
+            long started = System.nanoTime();
+            ProcessResult timedOut = testObj.execAsync(Arrays.asList("/bin/bash", "-c", "sleep 10"),
+                    ExecOptions.builder().timeout(200, TimeUnit.MILLISECONDS).build()).get(5, TimeUnit.SECONDS);
+            assertTrue(timedOut.isTimedOut());
+            assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(3));
+            assertFalse(blocked.isDone());
+
+            release.countDown();
+            ProcessResult result = blocked.get(20, TimeUnit.SECONDS);
+            assertEquals(Integer.valueOf(0), result.getExitCode());
+            assertEquals(5000, streamed.size());
+            assertEquals("1", streamed.get(0));
+            assertEquals("5000", streamed.get(4999));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCapturePolicy() throws Exception {
+        if (testObj == OS.win) {
+            return;
+        }
+        CapturePolicy policy = CapturePolicy.builder().head(2).tail(2).timestamps(true).build();
+        ProcessResult result = testObj.execCommandLine(Arrays.asList("/bin/bash", "-c", "seq 1 10; echo err 1>&2"),
+                ExecOptions.builder().capture(policy).build());
+        assertEquals(Arrays.asList("1", "2", "9", "10"), result.getStdout());
+        assertEquals(6, result.getDroppedStdout());
+        assertEquals(Collections.singletonList("err"), result.getStderr());
+        List<OutputLine> lines = result.getLines();
+        assertEquals(5, lines.size());
+        for (int i = 1; i < lines.size(); i++) {
+            assertTrue(lines.get(i - 1).getSequence() < lines.get(i).getSequence());
+        }
+        assertTrue(lines.get(0).getTimestamp() > 0);
+    }
+
+    @Test
+    public void testExecToChannel() throws Exception {
+        if (testObj == OS.win) {
+            return;
+        }
+        List<String> command = Arrays.asList("/bin/bash", "-c", "head -c 100000 /dev/zero; echo done 1>&2");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TransferResult result = testObj.execToChannel(command, Channels.newChannel(bytes), ExecOptions.defaults());
+        assertEquals(Integer.valueOf(0), result.getExitCode());
+        assertEquals(100000, result.getBytes());
+        assertEquals(100000, bytes.size());
+        assertEquals(Collections.singletonList("done"), result.getStderr());
+        assertEquals(Termination.EXITED, result.getTermination());
+
+        result = testObj.execToChannel(Arrays.asList("sleep", "5"), Channels.newChannel(bytes),
+                ExecOptions.builder().timeout(100, TimeUnit.MILLISECONDS).gracePeriod(0, TimeUnit.SECONDS).build());
+        assertTrue(result.isTimedOut());
+        assertNull(result.getExitCode());
+
+        Path file = Files.createTempFile("os-test", ".bin");
+        try {
+            result = testObj.execToFile(command, file, ExecOptions.defaults());
+            assertEquals(Integer.valueOf(0), result.getExitCode());
+            assertEquals(100000, result.getBytes());
+        } finally {
+            Files.delete(file);
+        }
+
+        // a failed write stops the endless command instead of leaving it blocked until the timeout
+        WritableByteChannel broken = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                throw new IOException("No space left on device");
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        long started = System.nanoTime();
+        try {
+            testObj.execToChannel(Arrays.asList("cat", "/dev/zero"), broken, ExecOptions.builder().timeout(10, TimeUnit.SECONDS).build());
+            fail("Write failure expected");
+        } catch (IOException e) {
+            assertEquals("No space left on device", e.getMessage());
+        }
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testExecPipeline() throws Exception {
+        if (testObj == OS.win) {
+            return;
+        }
+        PipelineResult result = testObj.execPipeline(Arrays.asList(
+                Arrays.asList("seq", "1", "100"),
+                Arrays.asList("grep", "7"),
+                Arrays.asList("/bin/bash", "-c", "wc -l; exit 3")), ExecOptions.defaults());
+        assertEquals(Arrays.asList(0, 0, 3), result.getExitCodes());
+        assertEquals(Integer.valueOf(3), result.getExitCode());
+        assertEquals("19", result.getStdout().get(0).trim());
+    }
+
+    @Test
+    public void testTimeoutKillsProcessTree() throws Exception {
+        if (testObj == OS.win || !ProcessKiller.isTreeSupported()) {
+            return;
+        }
+        long started = System.nanoTime();
+        // the background sleep keeps the output pipe open unless the whole tree is terminated
+        ProcessResult result = testObj.execCommandLine(Arrays.asList("/bin/bash", "-c", "echo started; sleep 30 & wait"),
+                ExecOptions.builder().timeout(200, TimeUnit.MILLISECONDS).gracePeriod(100, TimeUnit.MILLISECONDS).build());
+        assertEquals(Termination.TIMED_OUT, result.getTermination());
+        assertNull(result.getExitCode());
+        assertEquals(Collections.singletonList("started"), result.getStdout());
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testCommandTemplate() throws Exception {
+        if (testObj == OS.win) {
+            return;
+        }
+        assertTrue(OS.getOs() == testObj);
+        CommandTemplate echo = CommandTemplate.builder("/bin/bash", "-c", "echo $testVar $0")
+                .options(ExecOptions.builder().envVars(Collections.singletonMap("testVar", "template")).build())
+                .build();
+        assertEquals(Collections.singletonList("template first"), echo.exec("first").getStdout());
+        assertEquals(Collections.singletonList("template second"), echo.exec("second").getStdout());
+        assertEquals(Collections.singletonList("template async"), echo.execAsync("async").get(20, TimeUnit.SECONDS).getStdout());
+    }
+}
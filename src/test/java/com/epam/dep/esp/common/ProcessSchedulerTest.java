@@ -0,0 +1,84 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProcessSchedulerTest {
+
+    @Test
+    public void testLimitsAndPriority() throws Exception {
+        ProcessScheduler scheduler = ProcessScheduler.builder().maxConcurrent(2).limit("git", 1).maxQueued(2).build();
+        ProcessScheduler.Permit git = scheduler.acquire("git", 0);
+        CompletableFuture<ProcessScheduler.Permit> low = scheduler.acquireAsync("git", 0);
+        CompletableFuture<ProcessScheduler.Permit> high = scheduler.acquireAsync("git", 10);
+        assertFalse(low.isDone());
+        assertEquals(2, scheduler.getQueued());
+
+        // other keys are not blocked by the git limit, the queue is full now
+        ProcessScheduler.Permit javac = scheduler.acquire("javac", 0);
+        assertEquals(2, scheduler.getRunning());
+        try {
+            scheduler.acquire("tar", 0);
+            fail();
+        } catch (RejectedExecutionException e) {
+            assertEquals(1, scheduler.getRejected());
+        }
+
+        javac.close();
+        assertFalse(high.isDone());
+        git.close();
+        git.close();
+        assertTrue(high.isDone());
+        assertFalse(low.isDone());
+        high.join().close();
+        low.get(1, TimeUnit.SECONDS).close();
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        ProcessScheduler scheduler = ProcessScheduler.builder().maxConcurrent(1).queueTimeout(50, TimeUnit.MILLISECONDS).build();
+        ProcessScheduler.Permit permit = scheduler.acquire("git", 0);
+        try {
+            try {
+                scheduler.acquire("git", 0);
+                fail();
+            } catch (RejectedExecutionException e) {
+                assertEquals(0, scheduler.getQueued());
+            }
+            try {
+                scheduler.acquireAsync("git", 0).join();
+                fail();
+            } catch (Exception e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        } finally {
+            permit.close();
+        }
+        assertEquals(2, scheduler.getRejected());
+        assertEquals(0, scheduler.getRunning());
+    }
+}
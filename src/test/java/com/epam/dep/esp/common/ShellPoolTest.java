@@ -0,0 +1,90 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShellPoolTest {
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(OS.getOs() != OS.win);
+    }
+
+    @Test
+    public void testExec() throws Exception {
+        try (ShellPool pool = ShellPool.builder().maxShells(1).maxCommandsPerShell(3).build()) {
+            ProcessResult result = pool.exec(Arrays.asList("printf", "one\\ntwo"), ExecOptions.defaults());
+            assertEquals(Integer.valueOf(0), result.getExitCode());
+            assertEquals(Arrays.asList("one", "two"), result.getStdout());
+
+            result = pool.exec(Arrays.asList("/bin/bash", "-c", "echo \"it's $testVar\" 1>&2; pwd; exit 3"),
+                    ExecOptions.builder().homeFolder("/").envVars(Collections.singletonMap("testVar", "quoted")).build());
+            assertEquals(Integer.valueOf(3), result.getExitCode());
+            assertEquals(Collections.singletonList("/"), result.getStdout());
+            assertEquals(Collections.singletonList("it's quoted"), result.getStderr());
+            assertEquals(1, pool.getShells());
+
+            result = pool.exec(Arrays.asList("sleep", "5"), ExecOptions.builder().timeout(100, TimeUnit.MILLISECONDS).build());
+            assertNull(result.getExitCode());
+            assertEquals(0, pool.getShells());
+
+            assertEquals(Integer.valueOf(0), pool.exec(Collections.singletonList("true"), ExecOptions.defaults()).getExitCode());
+            assertEquals(0, pool.getFallbacks());
+        }
+    }
+
+    @Test
+    public void testBuiltins() throws Exception {
+        try (ShellPool pool = ShellPool.builder().maxShells(1).build()) {
+            assertEquals(Integer.valueOf(127), pool.exec(Arrays.asList("cd", "/"), ExecOptions.defaults()).getExitCode());
+            assertEquals(Integer.valueOf(127), pool.exec(Arrays.asList("exit", "3"), ExecOptions.defaults()).getExitCode());
+            ProcessResult result = pool.exec(Collections.singletonList("pwd"), ExecOptions.defaults());
+            assertEquals(Collections.singletonList(System.getProperty("user.dir")), result.getStdout());
+            assertEquals(1, pool.getShells());
+
+            try {
+                // kills the pooled shell running the command
+                pool.exec(Arrays.asList("/bin/bash", "-c", "kill -9 $PPID"), ExecOptions.defaults());
+                fail("Shell failure expected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("Shell exited"));
+            }
+            assertEquals(0, pool.getShells());
+        }
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        ShellPool pool = ShellPool.builder().build();
+        pool.close();
+        ProcessResult result = pool.exec(Arrays.asList("echo", "spawned"), ExecOptions.defaults());
+        assertEquals(Collections.singletonList("spawned"), result.getStdout());
+        assertEquals(1, pool.getFallbacks());
+    }
+}
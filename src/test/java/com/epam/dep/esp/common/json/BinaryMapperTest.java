@@ -0,0 +1,57 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BinaryMapperTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Map<String, Object> bean = new LinkedHashMap<>();
+        bean.put("name", "test");
+        bean.put("values", Arrays.asList(1, 2, 3));
+        bean.put("password", "secret");
+        for (BinaryFormat format : BinaryFormat.values()) {
+            BinaryMapper mapper = BinaryMapper.getInstance(format);
+            byte[] document = mapper.map(bean);
+            assertEquals(format.name(), bean, mapper.read(document, Map.class));
+
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            mapper.mapTo(bean, stream);
+            assertArrayEquals(format.name(), document, stream.toByteArray());
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+            mapper.mapTo(bean, buffer);
+            assertEquals(format.name(), document.length, buffer.position());
+
+            BinaryMapper filtered = BinaryMapper.getFilteredInstance(format);
+            Map<?, ?> parsed = filtered.read(new ByteArrayInputStream(filtered.map(bean)), Map.class);
+            assertEquals(format.name(), 2, parsed.size());
+        }
+    }
+}
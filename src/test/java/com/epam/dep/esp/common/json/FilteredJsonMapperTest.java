@@ -0,0 +1,99 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json;
+
+import com.epam.dep.esp.common.json.filter.RedactionAction;
+import com.epam.dep.esp.common.json.filter.RedactionRule;
+import org.junit.Test;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class FilteredJsonMapperTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Sensitive {
+    }
+
+    public static class Account {
+        public String login = "user";
+        public String userPassword = "secret";
+        public String apiToken = "token";
+    }
+
+    public static class Customer {
+        @Sensitive
+        public String email = "a@b.c";
+        public Long card = 42L;
+        public String note;
+    }
+
+    @Test
+    public void testDefaultFilter() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("PASSWORD", "secret");
+        map.put("account", new Account());
+        assertEquals("{\"account\":{\"login\":\"user\",\"apiToken\":\"token\"}}", FilteredJsonMapper.getInstance().map(map));
+    }
+
+    @Test
+    public void testSensitiveNames() {
+        FilteredJsonMapper mapper = FilteredJsonMapper.newInstance("password", "token$");
+        assertEquals("{\"login\":\"user\"}", mapper.map(new Account()));
+        assertEquals(mapper.map(new Account()), mapper.map(new Account()));
+    }
+
+    @Test
+    public void testRedactionRules() {
+        FilteredJsonMapper mapper = FilteredJsonMapper.builder()
+                .rule(RedactionRule.builder().name("token").action(RedactionAction.MASK).build())
+                .rule(RedactionRule.builder().annotation(Sensitive.class).action(RedactionAction.HASH).build())
+                .rule(RedactionRule.builder().declaringType(Customer.class).type(Number.class).action(RedactionAction.MASK).build())
+                .rule(RedactionRule.builder().name("note").action(RedactionAction.MASK).build())
+                .rule(RedactionRule.drop("password"))
+                .mask("***")
+                .hashKey("test-key".getBytes(StandardCharsets.UTF_8))
+                .build();
+        assertEquals("{\"login\":\"user\",\"apiToken\":\"***\"}", mapper.map(new Account()));
+        assertEquals("{\"email\":\"15e972eb34c84dacbf82e7eb81c231a57024f16289fb46e230b443d2f5d91742\",\"card\":\"***\",\"note\":null}",
+                mapper.map(new Customer()));
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("authToken", "value");
+        map.put("password", "secret");
+        assertEquals("{\"authToken\":\"***\"}", mapper.map(map));
+    }
+
+    @Test
+    public void testRandomHashKey() {
+        RedactionRule hash = RedactionRule.builder().annotation(Sensitive.class).action(RedactionAction.HASH).build();
+        FilteredJsonMapper first = FilteredJsonMapper.builder().rule(hash).build();
+        FilteredJsonMapper second = FilteredJsonMapper.builder().rule(hash).build();
+        assertEquals(first.map(new Customer()), first.map(new Customer()));
+        assertNotEquals(first.map(new Customer()), second.map(new Customer()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRuleWithoutCriteria() {
+        RedactionRule.builder().action(RedactionAction.MASK).build();
+    }
+}
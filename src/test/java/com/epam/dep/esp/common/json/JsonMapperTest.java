@@ -0,0 +1,139 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+
+package com.epam.dep.esp.common.json;
+
+import com.epam.dep.esp.common.metrics.Metrics;
+import com.epam.dep.esp.common.metrics.MetricsRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonMapperTest {
+
+    private static Map<String, Object> bean() {
+        Map<String, Object> bean = new LinkedHashMap<>();
+        bean.put("name", "test");
+        bean.put("count", 2);
+        return bean;
+    }
+
+    @Test
+    public void testMapTo() throws IOException {
+        JsonMapper mapper = JsonMapper.getInstance();
+        Map<String, Object> bean = bean();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        mapper.mapTo(false, true, bean, stream);
+        assertEquals(mapper.map(false, true, bean), new String(stream.toByteArray(), StandardCharsets.UTF_8));
+
+        StringWriter writer = new StringWriter();
+        mapper.mapTo(true, false, bean, writer);
+        assertEquals(mapper.map(true, bean), writer.toString());
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        mapper.mapTo(null, buffer);
+        buffer.flip();
+        assertEquals("null", StandardCharsets.UTF_8.decode(buffer).toString());
+    }
+
+    @Test
+    public void testThreadLocalInstance() {
+        Map<String, Object> bean = bean();
+        assertEquals(JsonMapper.getInstance().map(true, bean), JsonMapper.getThreadLocalInstance().map(true, bean));
+        assertEquals("{\"name\":\"test\",\"count\":2}", JsonMapper.getInstance().map(bean));
+    }
+
+    @Test
+    public void testMapAll() throws IOException {
+        JsonMapper mapper = JsonMapper.getInstance();
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        assertEquals(3, mapper.mapAll(Arrays.asList(1, "two", bean()), ndjson));
+        assertEquals("1\n\"two\"\n{\"name\":\"test\",\"count\":2}\n", new String(ndjson.toByteArray(), StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream array = new ByteArrayOutputStream();
+        mapper.mapAll(Arrays.asList(1, 2, 3).iterator(), array, true);
+        assertEquals("[1,2,3]", new String(array.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMapAllParallel() throws IOException {
+        JsonMapper mapper = JsonMapper.getInstance();
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(i);
+        }
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        for (boolean array : new boolean[]{false, true}) {
+            sequential.reset();
+            parallel.reset();
+            mapper.mapAll(items.iterator(), sequential, array);
+            assertEquals(1000, mapper.mapAll(items.iterator(), parallel, array, ForkJoinPool.commonPool(), 7));
+            assertEquals(sequential.toString("UTF-8"), parallel.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        JsonMapper mapper = JsonMapper.getInstance();
+        String document = mapper.map(bean());
+        assertEquals(bean(), mapper.read(document, Map.class));
+        assertEquals(2, mapper.readTree(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8))).get("count").asInt());
+
+        byte[] array = "[{\"count\":1},{\"count\":2},{\"count\":3}]".getBytes(StandardCharsets.UTF_8);
+        int sum = 0;
+        try (MappingIterator<JsonNode> items = mapper.readValues(new ByteArrayInputStream(array), JsonNode.class)) {
+            while (items.hasNext()) {
+                sum += items.next().get("count").asInt();
+            }
+        }
+        assertEquals(6, sum);
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        AtomicLong size = new AtomicLong();
+        MetricsRegistry.setMetrics(new Metrics() {
+            @Override
+            public void serialization(String mapper, long bytes, long durationNanos) {
+                size.addAndGet(bytes);
+            }
+        });
+        try {
+            String document = JsonMapper.getInstance().map(bean());
+            JsonMapper.getInstance().mapTo(bean(), new ByteArrayOutputStream());
+            assertEquals(document.length() * 2, size.get());
+        } finally {
+            MetricsRegistry.setMetrics(null);
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ *  /***************************************************************************
+ *  Copyright (c) 2017, EPAM SYSTEMS INC
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  ***************************************************************************
+ */
+package com.epam.dep.esp.common.web;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WebTest {
+    private static final String TEXT = text();
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private HttpServer server;
+    private WebCache cache;
+    private String url;
+    private Web web;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/plain", exchange -> respond(exchange, 200, null, "hello".getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/gzip", exchange -> respond(exchange, 200, "gzip", gzip(TEXT)));
+        server.createContext("/deflate", exchange -> respond(exchange, 200, "deflate", deflate(TEXT)));
+        server.createContext("/error", exchange -> respond(exchange, 500, "gzip", gzip("boom")));
+        server.createContext("/latin", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=ISO-8859-1");
+            respond(exchange, 200, null, "caf\u00e9".getBytes(StandardCharsets.ISO_8859_1));
+        });
+        server.createContext("/latin-error", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=ISO-8859-1");
+            respond(exchange, 500, null, "caf\u00e9 closed".getBytes(StandardCharsets.ISO_8859_1));
+        });
+        server.createContext("/fresh", exchange -> {
+            calls.incrementAndGet();
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            respond(exchange, 200, "gzip", gzip(TEXT));
+        });
+        server.createContext("/etag", exchange -> {
+            calls.incrementAndGet();
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=0");
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+            } else {
+                respond(exchange, 200, null, "tagged".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.createContext("/whoami", exchange -> {
+            calls.incrementAndGet();
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            respond(exchange, 200, null, (authorization == null ? "anonymous" : authorization).getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/slow", exchange -> {
+            calls.incrementAndGet();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.getCoalesced() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            respond(exchange, 200, null, "slow".getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/flaky", exchange -> {
+            int call = calls.incrementAndGet();
+            respond(exchange, call % 3 == 0 ? 200 : 503, null, ("call " + call).getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location", url + "/plain");
+            respond(exchange, 302, null, "moved".getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/echo", exchange -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                copy(in, body);
+            }
+            respond(exchange, 200, null, (exchange.getRequestMethod() + " " + body).getBytes(StandardCharsets.UTF_8));
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+        web = new Web(10000);
+    }
+
+    @After
+    public void tearDown() {
+        web.close();
+        if (cache != null) {
+            cache.close();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void testGetAsync() throws Exception {
+        assertEquals("hello", web.getAsync(url + "/plain").get());
+        assertEquals("hello", web.getAsync(url + "/redirect").get());
+        assertEquals(TEXT, web.getAsync(url + "/gzip").get());
+        assertEquals(TEXT, web.getAsync(url + "/deflate").get());
+        assertEquals(TEXT, web.get(url + "/gzip"));
+        try {
+            web.getAsync(url + "/error").get();
+            fail("Error status expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof WebToolsException);
+            assertEquals("Response code is 500 result: boom", e.getCause().getMessage());
+        }
+        try {
+            web.getAsync(url + "/latin-error", null, null, null, Channels.newChannel(new ByteArrayOutputStream())).get();
+            fail("Error status expected");
+        } catch (ExecutionException e) {
+            assertEquals("Response code is 500 result: caf\u00e9 closed", e.getCause().getMessage());
+        }
+
+        // a request that can't be sent fails the future instead of throwing
+        Web closed = new Web(10000);
+        closed.close();
+        try {
+            closed.getAsync(url + "/plain").get();
+            fail("Closed client");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof WebToolsException);
+        }
+    }
+
+    @Test
+    public void testPostAsync() throws Exception {
+        assertEquals("POST payload", web.postAsync(url + "/echo", null, null, null, new StringEntity("payload")).get());
+    }
+
+    @Test
+    public void testGetAsyncToChannel() throws Exception {
+        for (String path : new String[]{"/gzip", "/deflate", "/plain"}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long bytes = web.getAsync(url + path, null, null, null, Channels.newChannel(out)).get();
+            assertEquals(out.size(), bytes);
+            assertEquals("/plain".equals(path) ? "hello" : TEXT, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+        try {
+            web.getAsync(url + "/error", null, null, null, Channels.newChannel(new ByteArrayOutputStream())).get();
+            fail("Error status expected");
+        } catch (ExecutionException e) {
+            assertEquals("Response code is 500 result: boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testCharset() throws Exception {
+        assertEquals("caf\u00e9", web.get(url + "/latin"));
+        assertEquals("caf\u00e9", web.getAsync(url + "/latin").get());
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        assertEquals(Integer.valueOf(TEXT.length()), web.execute(new HttpGet(url + "/gzip"),
+                response -> EntityUtils.toString(response.getEntity()).length()));
+        assertEquals(Integer.valueOf(200), web.execute(new HttpGet(url + "/redirect"),
+                response -> response.getStatusLine().getStatusCode()));
+    }
+
+    @Test
+    public void testDownload() throws Exception {
+        Path target = Files.createTempFile("web", ".txt");
+        try {
+            assertEquals(TEXT.length(), web.download(url + "/gzip", target));
+            assertEquals(TEXT, new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+            try {
+                web.download(url + "/error", target);
+                fail("Error status expected");
+            } catch (WebToolsException e) {
+                assertEquals("Response code is 500 result: boom", e.getMessage());
+            }
+            try {
+                web.download(url + "/latin-error", target);
+                fail("Error status expected");
+            } catch (WebToolsException e) {
+                assertEquals("Response code is 500 result: caf\u00e9 closed", e.getMessage());
+            }
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    public void testGetStream() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            // more streams than connections per route, closing a stream has to release its connection
+            try (InputStream in = web.getStream(url + "/deflate", null, null, null)) {
+                assertEquals('l', in.read());
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = web.getStream(url + "/gzip", null, null, null)) {
+            copy(in, out);
+        }
+        assertEquals(TEXT, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        cache = WebCache.builder().build();
+        Web cached = new Web(10000, cache);
+        try {
+            assertEquals(TEXT, cached.get(url + "/fresh"));
+            assertEquals(TEXT, cached.get(url + "/fresh"));
+            assertEquals(1, calls.get());
+            assertEquals(1, cache.getMisses());
+            assertEquals(1, cache.getHits());
+
+            assertEquals("tagged", cached.get(url + "/etag"));
+            assertEquals("tagged", cached.get(url + "/etag"));
+            assertEquals(3, calls.get());
+            assertEquals(1, cache.getRevalidations());
+            assertEquals(2, cache.getEntries());
+            assertTrue(cache.getMemoryBytes() > 0);
+        } finally {
+            cached.close();
+        }
+    }
+
+    @Test
+    public void testCacheCredentials() throws Exception {
+        cache = WebCache.builder().build();
+        Web cached = new Web(10000, cache);
+        try {
+            String alice = cached.get(url + "/whoami", null, null, new UsernamePasswordCredentials("alice", "secret"));
+            String bob = cached.get(url + "/whoami", null, null, new UsernamePasswordCredentials("bob", "secret"));
+            assertNotEquals(alice, bob);
+            assertEquals(alice, cached.get(url + "/whoami", null, null, new UsernamePasswordCredentials("alice", "secret")));
+            assertEquals("anonymous", cached.get(url + "/whoami"));
+            assertEquals(4, calls.get());
+            assertEquals(0, cache.getHits());
+        } finally {
+            cached.close();
+        }
+    }
+
+    @Test
+    public void testCacheDiskTier() throws Exception {
+        Path directory = Files.createTempDirectory("web-cache");
+        cache = WebCache.builder().maxMemoryObjectSize(100).directory(directory).build();
+        Web cached = new Web(10000, cache);
+        try {
+            assertEquals(TEXT, cached.get(url + "/fresh"));
+            assertEquals(TEXT, cached.get(url + "/fresh"));
+            assertEquals(1, calls.get());
+            assertEquals(0, cache.getMemoryBytes());
+            assertTrue(cache.getDiskBytes() > 100);
+            cache.close();
+            assertEquals(0, cache.getEntries());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            cached.close();
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testCacheCoalescing() throws Exception {
+        cache = WebCache.builder().build();
+        Web cached = new Web(10000, cache);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(() -> cached.get(url + "/slow")));
+            }
+            for (Future<String> result : results) {
+                assertEquals("slow", result.get());
+            }
+            assertEquals(1, calls.get());
+            assertEquals(3, cache.getCoalesced());
+        } finally {
+            callers.shutdown();
+            cached.close();
+        }
+    }
+
+    @Test
+    public void testSharedPool() throws Exception {
+        try (WebPool pool = WebPool.builder().maxTotal(4).maxPerRoute(1).maxPerRoute(url, 2)
+                .evictIdleAfter(1, TimeUnit.SECONDS).build()) {
+            Web first = Web.builder().pool(pool).timeout(5000).keepAlive(30, TimeUnit.SECONDS).build();
+            assertEquals("hello", first.get(url + "/plain"));
+            first.close();
+            Web second = Web.builder().pool(pool).timeout(5000).build();
+            try (InputStream one = second.getStream(url + "/plain", null, null, null);
+                 InputStream two = second.getStream(url + "/plain", null, null, null)) {
+                // the route limit allows two leased connections
+                assertEquals('h', one.read());
+                assertEquals('h', two.read());
+            }
+            assertEquals("hello", second.get(url + "/plain"));
+            second.close();
+        }
+    }
+
+    @Test
+    public void testSharedPoolAsync() throws Exception {
+        try (WebPool pool = WebPool.builder().maxTotal(4).maxPerRoute(url, 1).evictIdleAfter(1, TimeUnit.SECONDS).build()) {
+            Web first = Web.builder().pool(pool).timeout(5000).build();
+            Web second = Web.builder().pool(pool).timeout(5000).build();
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                responses.add(first.getAsync(url + "/plain"));
+                responses.add(second.getAsync(url + "/gzip"));
+            }
+            for (int i = 0; i < responses.size(); i++) {
+                assertEquals(i % 2 == 0 ? "hello" : TEXT, responses.get(i).get(10, TimeUnit.SECONDS));
+            }
+            // both clients queued for the single connection the route limit allows
+            assertEquals(1, pool.getAsyncConnectionManager().getTotalStats().getAvailable());
+            first.close();
+            assertEquals("hello", second.getAsync(url + "/plain").get(10, TimeUnit.SECONDS));
+            second.close();
+            assertEquals(1, pool.getAsyncConnectionManager().getTotalStats().getAvailable());
+        }
+    }
+
+    @Test
+    public void testPoolNames() {
+        try (WebPool first = WebPool.builder().build();
+             WebPool second = WebPool.builder().build();
+             WebPool named = WebPool.builder().name("api").build()) {
+            assertTrue(first.getName().startsWith(Web.POOL_NAME + "-"));
+            assertNotEquals(first.getName(), second.getName());
+            assertEquals("api", named.getName());
+        }
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        RetryPolicy retry = RetryPolicy.builder().maxAttempts(3).backoff(1, 10, TimeUnit.MILLISECONDS).build();
+        Web retrying = Web.builder().retry(retry).timeout(5000).build();
+        try {
+            assertEquals("call 3", retrying.get(url + "/flaky"));
+            assertEquals("call 6", retrying.getAsync(url + "/flaky").get());
+            try {
+                retrying.post(url + "/flaky", null, null, null, new StringEntity("payload"));
+                fail("POST must not be retried");
+            } catch (WebToolsException e) {
+                assertEquals(503, e.getStatusCode());
+                assertEquals(7, calls.get());
+            }
+        } finally {
+            retrying.close();
+        }
+    }
+
+    @Test
+    public void testRetryBudget() throws Exception {
+        RetryPolicy retry = RetryPolicy.builder().maxAttempts(10).backoff(1, 10, TimeUnit.MILLISECONDS)
+                .budget(1, 0.5).retryNonIdempotent(true).build();
+        Web retrying = Web.builder().retry(retry).timeout(5000).build();
+        try {
+            try {
+                retrying.post(url + "/flaky", null, null, null, new StringEntity("payload"));
+                fail("Retry budget must be exhausted");
+            } catch (WebToolsException e) {
+                // the only token is spent on the second call
+                assertEquals(503, e.getStatusCode());
+                assertEquals(2, calls.get());
+            }
+            // the third call succeeds and returns half a token, not enough for a retry
+            assertEquals("call 3", retrying.get(url + "/flaky"));
+            try {
+                retrying.getAsync(url + "/flaky").get();
+                fail("Retry budget must be exhausted");
+            } catch (ExecutionException e) {
+                assertEquals(503, ((WebToolsException) e.getCause()).getStatusCode());
+                assertEquals(4, calls.get());
+            }
+        } finally {
+            retrying.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String encoding, byte[] body) throws IOException {
+        if (encoding != null) {
+            exchange.getResponseHeaders().add("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out)) {
+            deflate.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    private static String text() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        return text.toString();
+    }
+}